@@ -0,0 +1,77 @@
+/*
+  Project:  Project 1
+  Description:  Runs every benchmark with the GC profiler and prints
+                throughput, p99 latency and allocation per token.
+ */
+
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * The project has no build file, so the benchmarks are compiled by hand
+ * against JMH 1.37 (jmh-core, jmh-generator-annprocess, jopt-simple and
+ * commons-math3), from the <code>Project1</code> directory:
+ * <pre>
+ *   javac -cp "$JMH/*" -d bench-out src/*.java bench/benchmarks/*.java
+ *   java -cp "bench-out:$JMH/*" -Dlayout.tests=tests benchmarks.LayoutBenchmarks
+ * </pre>
+ * The annotation processor in jmh-generator-annprocess is picked up from
+ * the classpath and writes the benchmark list into <code>bench-out</code>.
+ * Any JMH command-line option may be added, such as <code>-f 1 -wi 3</code>
+ * for a quick run or a regular expression to select benchmarks.
+ * <p>
+ * Allocation per token is <code>gc.alloc.rate.norm</code>, the bytes
+ * allocated per operation, divided by the number of tokens in the input.
+ */
+public class LayoutBenchmarks {
+
+    public static void main(String[] args) throws Throwable {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include("benchmarks\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        Map<String, Integer> tokens = new HashMap<>();
+        for (String input : LayoutInputs.ALL)
+            tokens.put(input, Targets.lex(LayoutInputs.load(input)));
+
+        Map<String, String[]> rows = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            String input = params.getParam("input");
+            String name = params.getBenchmark().substring("benchmarks.".length());
+            String[] row = rows.computeIfAbsent(name + " " + input, key -> new String[]{name, input, "", "", ""});
+
+            Result primary = result.getPrimaryResult();
+            if (params.getMode() == Mode.Throughput) {
+                row[2] = String.format("%.1f %s", primary.getScore(), primary.getScoreUnit());
+                Result allocation = result.getSecondaryResults().get("gc.alloc.rate.norm");
+                if (allocation != null)
+                    row[4] = String.format("%.1f", allocation.getScore() / tokens.get(input));
+            } else if (params.getMode() == Mode.SampleTime) {
+                row[3] = String.format("%.3f %s", primary.getStatistics().getPercentile(99), primary.getScoreUnit());
+            }
+        }
+
+        System.out.printf("\n%-40s %-16s %20s %18s %10s\n", "Benchmark", "Input", "Throughput", "p99", "B/token");
+        for (String[] row : rows.values())
+            System.out.printf("%-40s %-16s %20s %18s %10s\n", (Object[]) row);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+  Project:  Project 1
+  Description:  Generates layout programs of any size for the grammar the
+                parser accepts, optionally with syntax errors mixed in.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+
+final class LayoutGenerator {
+    private final Shape shape;
+    private final Random random;
+    private final StringBuilder chunk = new StringBuilder();
+    private long errors;
+
+    /**
+     * Shape of the generated programs.
+     *
+     * @param depth        Panels nested inside each top-level panel
+     * @param fanOut       Widgets per panel, counting the nested panel
+     * @param groupSize    Radio buttons per group
+     * @param stringLength Approximate length of every quoted string
+     * @param errorRate    Chance, per widget, that the widget is written with
+     *                     a syntax error
+     */
+    record Shape(int depth, int fanOut, int groupSize, int stringLength, double errorRate) {
+        static final Shape TYPICAL = new Shape(4, 8, 5, 12, 0);
+    }
+
+    LayoutGenerator(Shape _shape, long _seed) {
+        shape = _shape;
+        random = new Random(_seed);
+    }
+
+    /**
+     * Number of widgets written with a syntax error so far.
+     */
+    long errors() {
+        return errors;
+    }
+
+    /**
+     * Writes one window of top-level panels until at least
+     * <code>size</code> characters have been written.  Each panel is nested
+     * <code>depth</code> deep; panels are written without recursion, so any
+     * depth can be generated.
+     *
+     * @param out  Destination
+     * @param size Minimum number of characters to write
+     * @return Number of characters written
+     * @throws IOException If <code>out</code> fails
+     */
+    long write(Writer out, long size) throws IOException {
+        chunk.setLength(0);
+        chunk.append("Window ");
+        string();
+        chunk.append(" (800, 600) ");
+        layout();
+        chunk.append(":\n");
+        long written = flush(out);
+
+        do {
+            for (int level = 0; level <= shape.depth(); level++) {
+                chunk.append("Panel ");
+                layout();
+                chunk.append(":\n");
+                for (int x = 1; x < shape.fanOut(); x++)
+                    widget();
+
+                if (chunk.length() >= 1 << 16)
+                    written += flush(out);
+            }
+            for (int level = 0; level <= shape.depth(); level++)
+                chunk.append("End;\n");
+
+            written += flush(out);
+        } while (written < size);
+
+        chunk.append("End.\n");
+        return written + flush(out);
+    }
+
+    private long flush(Writer out) throws IOException {
+        int length = chunk.length();
+        out.append(chunk);
+        chunk.setLength(0);
+        return length;
+    }
+
+    private void widget() {
+        if (random.nextDouble() < shape.errorRate()) {
+            error();
+            return;
+        }
+
+        switch (random.nextInt(4)) {
+            case 0 -> {
+                chunk.append("Button ");
+                string();
+                chunk.append(";\n");
+            }
+            case 1 -> {
+                chunk.append("Label ");
+                string();
+                chunk.append(";\n");
+            }
+            case 2 -> chunk.append("Textfield ").append(1 + random.nextInt(40)).append(";\n");
+            default -> {
+                chunk.append("Group\n");
+                for (int x = 0; x < shape.groupSize(); x++) {
+                    chunk.append("Radio ");
+                    string();
+                    chunk.append(";\n");
+                }
+                chunk.append("End;\n");
+            }
+        }
+    }
+
+    /**
+     * Writes a widget with one of the mistakes people make by hand.
+     */
+    private void error() {
+        errors++;
+        switch (random.nextInt(4)) {
+            case 0 -> {
+                chunk.append("Button ");
+                string();
+                chunk.append("\n");
+            }
+            case 1 -> chunk.append("Textfield 2O;\n");
+            case 2 -> chunk.append("Label \"unterminated;\n");
+            default -> chunk.append("Panel Layout Grid(2, ):\nEnd;\n");
+        }
+    }
+
+    private void layout() {
+        chunk.append("Layout ");
+        switch (random.nextInt(3)) {
+            case 0 -> chunk.append("Flow");
+            case 1 -> chunk.append("Grid(").append(1 + random.nextInt(9)).append(", ")
+                    .append(1 + random.nextInt(9)).append(')');
+            default -> chunk.append("Grid(").append(1 + random.nextInt(9)).append(", ")
+                    .append(1 + random.nextInt(9)).append(", ").append(random.nextInt(10)).append(", ")
+                    .append(random.nextInt(10)).append(')');
+        }
+    }
+
+    /**
+     * Writes a quoted string of lowercase words.
+     */
+    private void string() {
+        chunk.append('"');
+        int start = chunk.length();
+        do {
+            if (chunk.length() > start)
+                chunk.append(' ');
+            for (int x = 1 + random.nextInt(8); x > 0; x--)
+                chunk.append((char) ('a' + random.nextInt(26)));
+        } while (chunk.length() - start < shape.stringLength());
+        chunk.append('"');
+    }
+}
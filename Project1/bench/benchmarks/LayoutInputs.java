@@ -0,0 +1,94 @@
+/*
+  Project:  Project 1
+  Description:  Inputs shared by the benchmarks: the hand-written files in
+                tests/ and generated layouts of the shapes that stress the
+                lexer and parser.
+ */
+
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+final class LayoutInputs {
+    /**
+     * Every input, valid or not.
+     */
+    static final String[] ALL = {
+            "test-calculator", "test-nested", "test-radbuttons", "test-syntax",
+            "deep-nesting", "wide-grid", "huge-group", "long-strings"
+    };
+
+    private LayoutInputs() {
+    }
+
+    /**
+     * Returns the source of an input.  Names starting with "test-" are read
+     * from <code>Project1/tests/</code>, or from the directory in the
+     * <code>layout.tests</code> system property; the others are generated.
+     *
+     * @param name Name of the input
+     * @return Source text
+     * @throws IOException If a test file cannot be read
+     */
+    static char[] load(String name) throws IOException {
+        String source = switch (name) {
+            case "deep-nesting" -> deepNesting(500);
+            case "wide-grid" -> wideGrid(100, 100);
+            case "huge-group" -> hugeGroup(10_000);
+            case "long-strings" -> longStrings(100, 10_000);
+            default -> Files.readString(Path.of(System.getProperty("layout.tests", "Project1/tests"), name));
+        };
+        return source.toCharArray();
+    }
+
+    /**
+     * Panels nested <code>depth</code> deep, each holding a label.
+     */
+    static String deepNesting(int depth) {
+        StringBuilder source = new StringBuilder("Window \"Deep\" (800, 600) Layout Flow:\n");
+        for (int x = 0; x < depth; x++)
+            source.append("Panel Layout Flow:\nLabel \"Level ").append(x).append("\";\n");
+        for (int x = 0; x < depth; x++)
+            source.append("End;\n");
+        return source.append("End.\n").toString();
+    }
+
+    /**
+     * One grid of <code>rows</code> by <code>columns</code> buttons.
+     */
+    static String wideGrid(int rows, int columns) {
+        StringBuilder source = new StringBuilder("Window \"Grid\" (800, 600) Layout Grid(")
+                .append(rows).append(", ").append(columns).append(", 2, 2):\n");
+        for (int x = 0; x < rows * columns; x++)
+            source.append("Button \"").append(x).append("\";\n");
+        return source.append("End.\n").toString();
+    }
+
+    /**
+     * One radio group of <code>size</code> buttons.
+     */
+    static String hugeGroup(int size) {
+        StringBuilder source = new StringBuilder("Window \"Group\" (800, 600) Layout Flow:\nGroup\n");
+        for (int x = 0; x < size; x++)
+            source.append("Radio \"Option ").append(x).append("\";\n");
+        return source.append("End;\nEnd.\n").toString();
+    }
+
+    /**
+     * <code>count</code> labels whose text is about <code>length</code>
+     * characters of words.
+     */
+    static String longStrings(int count, int length) {
+        StringBuilder source = new StringBuilder("Window \"Strings\" (800, 600) Layout Flow:\n");
+        for (int x = 0; x < count; x++) {
+            source.append("Label \"");
+            for (int start = source.length(); source.length() - start < length; )
+                source.append("lorem ipsum ").append(x).append(' ');
+            source.append("\";\n");
+        }
+        return source.append("End.\n").toString();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+  Project:  Project 1
+  Description:  Measures building the Swing components for a parsed tree
+                whose panels are large enough to be built lazily.
+ */
+
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.swing.*;
+
+
+/**
+ * Forks with lazy panels turned on, so the large panels of these inputs
+ * become lazy panels; compare with the same inputs in
+ * <code>SwingBuilderBenchmark</code>, which builds every component.  Only
+ * construction is measured: the panels are never shown, so no cell gets a
+ * component beyond what building makes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Fork(jvmArgsAppend = "-Dlayout.lazyCells=256")
+public class LazySwingBuilderBenchmark {
+    @Param({"wide-grid", "huge-group"})
+    public String input;
+
+    private Object content;
+
+    @Setup
+    public void load() throws Throwable {
+        char[] source = LayoutInputs.load(input);
+        Object tree = Targets.parse(source);
+        if (tree == null)
+            throw new IllegalStateException(input + ": " + Targets.error(source));
+
+        content = Targets.contentPanel(tree);
+    }
+
+    @Benchmark
+    public JComponent build() throws Throwable {
+        return Targets.build(content);
+    }
+}
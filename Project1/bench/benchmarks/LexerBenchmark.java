@@ -0,0 +1,45 @@
+/*
+  Project:  Project 1
+  Description:  Measures the lexer on its own, without a parser pulling
+                tokens.
+ */
+
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+
+/**
+ * Lexes each input from memory, so the numbers do not include reading the
+ * file.  <code>analyzeFile()</code> runs <code>analyzeLine()</code> once per
+ * line, so a regression in either shows up here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+public class LexerBenchmark {
+    @Param({
+            "test-calculator", "test-nested", "test-radbuttons", "test-syntax",
+            "deep-nesting", "wide-grid", "huge-group", "long-strings"
+    })
+    public String input;
+
+    private char[] source;
+
+    @Setup
+    public void load() throws IOException {
+        source = LayoutInputs.load(input);
+    }
+
+    @Benchmark
+    public int analyzeFile() throws Throwable {
+        return Targets.lex(source);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+  Project:  Project 1
+  Description:  Measures parsing, including the lexing the parser pulls.
+ */
+
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+
+/**
+ * The lexer is pull-based and cannot run ahead of the parser, so parse
+ * time always includes lexing; subtract <code>LexerBenchmark</code> for the
+ * parser's own share.  <code>test-syntax</code> measures the error path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+public class ParserBenchmark {
+    @Param({
+            "test-calculator", "test-nested", "test-radbuttons", "test-syntax",
+            "deep-nesting", "wide-grid", "huge-group", "long-strings"
+    })
+    public String input;
+
+    private char[] source;
+
+    @Setup
+    public void load() throws IOException {
+        source = LayoutInputs.load(input);
+    }
+
+    @Benchmark
+    public Object parseFile() throws Throwable {
+        return Targets.parse(source);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+  Project:  Project 1
+  Description:  Lexes and parses generated files from 1 KB to 1 GB and
+                charts time and heap use against input size.
+ */
+
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Needs no JMH, so it can be compiled and run on its own from the
+ * <code>Project1</code> directory:
+ * <pre>
+ *   javac -d bench-out src/*.java bench/benchmarks/Targets.java \
+ *         bench/benchmarks/LayoutGenerator.java bench/benchmarks/ScalingHarness.java
+ *   java -Xmx8g -Dlayout.maxDepth=2000000 -cp bench-out benchmarks.ScalingHarness [--max BYTES] [--errors RATE] [--csv FILE]
+ * </pre>
+ * Sizes grow by a factor of 4 up to <code>--max</code>, 1 GB by default.
+ * Each file is written to a temporary directory, measured and deleted.  A
+ * run that scales linearly shows the same time per byte at every size.  A
+ * second pass keeps the size small and raises the <code>Panel</code>
+ * nesting depth to 1,000,000, beyond the parser's default limit.
+ * <p>
+ * Times are the best of several runs for small files, so they exclude JIT
+ * warm-up but not page faults of a freshly written file.  Heap is the peak
+ * of all heap pools during the parse minus the heap in use before it, which
+ * is mostly the layout tree.
+ */
+public class ScalingHarness {
+    private static final long KB = 1 << 10;
+    private static final long MIN_MEASURE_NANOS = 500_000_000L;
+
+    private record Row(String label, long bytes, long tokens, long lexNanos, long parseNanos, long heap,
+                       String outcome) {
+    }
+
+    public static void main(String[] args) throws Throwable {
+        long max = 1L << 30;
+        double errorRate = 0;
+        Path csv = null;
+        for (int x = 0; x + 1 < args.length; x += 2) {
+            switch (args[x]) {
+                case "--max" -> max = Long.parseLong(args[x + 1]);
+                case "--errors" -> errorRate = Double.parseDouble(args[x + 1]);
+                case "--csv" -> csv = Path.of(args[x + 1]);
+                default -> {
+                    System.out.println("Usage: ScalingHarness [--max BYTES] [--errors RATE] [--csv FILE]");
+                    return;
+                }
+            }
+        }
+
+        Path directory = Files.createTempDirectory("layout-scaling");
+        LayoutGenerator.Shape typical = LayoutGenerator.Shape.TYPICAL;
+        LayoutGenerator.Shape shape = new LayoutGenerator.Shape(typical.depth(), typical.fanOut(),
+                typical.groupSize(), typical.stringLength(), errorRate);
+
+        List<Row> sizes = new ArrayList<>();
+        for (long size = KB; size <= max; size *= 4)
+            sizes.add(measure(directory, size(size), shape, size));
+        print(System.out, "Input size", sizes);
+
+        List<Row> depths = new ArrayList<>();
+        for (int depth = 10; depth <= 1_000_000; depth *= 10)
+            depths.add(measure(directory, "depth " + depth, new LayoutGenerator.Shape(depth, 2, 2, 8, 0), 0));
+        print(System.out, "Panel nesting", depths);
+
+        Files.delete(directory);
+        if (csv != null) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(csv), false, StandardCharsets.UTF_8)) {
+                out.println("run,bytes,tokens,lex_ns,parse_ns,heap_bytes,outcome");
+                for (List<Row> rows : List.of(sizes, depths)) {
+                    for (Row row : rows)
+                        out.printf("%s,%d,%d,%d,%d,%d,%s\n", row.label(), row.bytes(), row.tokens(), row.lexNanos(),
+                                row.parseNanos(), row.heap(), row.outcome());
+                }
+            }
+        }
+    }
+
+    private static Row measure(Path directory, String label, LayoutGenerator.Shape shape, long size) throws Throwable {
+        File file = directory.resolve("input.txt").toFile();
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8), 1 << 16)) {
+            new LayoutGenerator(shape, size).write(out, size);
+        }
+
+        try {
+            long bytes = file.length();
+            long[] tokens = new long[1];
+            long lexNanos = best(() -> tokens[0] = Targets.lex(file));
+
+            String[] outcome = {"OK"};
+            long parseNanos;
+            long heap;
+            try {
+                parseNanos = best(() -> {
+                    if (Targets.parse(file) == null)
+                        outcome[0] = "FAILED";
+                });
+                heap = peakHeap(() -> Targets.parse(file));
+            } catch (StackOverflowError e) {
+                return new Row(label, bytes, tokens[0], lexNanos, -1, -1, "StackOverflowError");
+            }
+            return new Row(label, bytes, tokens[0], lexNanos, parseNanos, heap, outcome[0]);
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    private interface Run {
+        void run() throws Throwable;
+    }
+
+    /**
+     * Runs <code>run</code> until at least half a second has passed, and
+     * at least twice, and returns the fastest time.
+     */
+    private static long best(Run run) throws Throwable {
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int count = 0; count < 2 || total < MIN_MEASURE_NANOS; count++) {
+            long start = System.nanoTime();
+            run.run();
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+        return best;
+    }
+
+    private static long peakHeap(Run run) throws Throwable {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP)
+                pools.add(pool);
+        }
+
+        System.gc();
+        long before = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            before += pool.getUsage().getUsed();
+            pool.resetPeakUsage();
+        }
+
+        run.run();
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools)
+            peak += pool.getPeakUsage().getUsed();
+        return Math.max(0, peak - before);
+    }
+
+    /**
+     * Prints the rows as a table, then charts nanoseconds per byte for each
+     * row; flat bars mean linear scaling.
+     */
+    private static void print(PrintStream out, String title, List<Row> rows) {
+        out.printf("\n%-14s %12s %12s %11s %11s %12s %9s  %s\n", title, "Bytes", "Tokens", "Lex ms", "Parse ms",
+                "Heap MB", "Heap/B", "Outcome");
+        for (Row row : rows) {
+            if (row.parseNanos() < 0) {
+                out.printf("%-14s %12d %12d %11.3f %11s %12s %9s  %s\n", row.label(), row.bytes(), row.tokens(),
+                        row.lexNanos() / 1e6, "-", "-", "-", row.outcome());
+                continue;
+            }
+
+            out.printf("%-14s %12d %12d %11.3f %11.3f %12.1f %9.1f  %s\n", row.label(), row.bytes(), row.tokens(),
+                    row.lexNanos() / 1e6, row.parseNanos() / 1e6, row.heap() / (double) (1 << 20),
+                    row.heap() / (double) row.bytes(), row.outcome());
+        }
+
+        double scale = 0;
+        for (Row row : rows)
+            scale = Math.max(scale, Math.max(row.lexNanos(), row.parseNanos()) / (double) row.bytes());
+
+        out.printf("\n%-14s ns per byte, lex (-) and parse (#)\n", title);
+        for (Row row : rows) {
+            double lex = row.lexNanos() / (double) row.bytes();
+            double parse = row.parseNanos() / (double) row.bytes();
+            out.printf("%-14s |%-50s %7.2f\n", row.label(), "-".repeat((int) Math.round(50 * lex / scale)), lex);
+            if (row.parseNanos() >= 0)
+                out.printf("%-14s |%-50s %7.2f\n", "", "#".repeat((int) Math.round(50 * parse / scale)), parse);
+        }
+    }
+
+    private static String size(long bytes) {
+        if (bytes >= KB * KB * KB)
+            return bytes / (KB * KB * KB) + " GB";
+        if (bytes >= KB * KB)
+            return bytes / (KB * KB) + " MB";
+        return bytes / KB + " KB";
+    }
+}
@@ -0,0 +1,48 @@
+/*
+  Project:  Project 1
+  Description:  Measures building the Swing components for a parsed tree.
+ */
+
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.swing.*;
+
+
+/**
+ * The tree is parsed once in setup, so only component construction is
+ * measured.  <code>test-syntax</code> is left out since it has no tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+public class SwingBuilderBenchmark {
+    @Param({
+            "test-calculator", "test-nested", "test-radbuttons",
+            "deep-nesting", "wide-grid", "huge-group", "long-strings"
+    })
+    public String input;
+
+    private Object content;
+
+    @Setup
+    public void load() throws Throwable {
+        char[] source = LayoutInputs.load(input);
+        Object tree = Targets.parse(source);
+        if (tree == null)
+            throw new IllegalStateException(input + ": " + Targets.error(source));
+
+        content = Targets.contentPanel(tree);
+    }
+
+    @Benchmark
+    public JComponent build() throws Throwable {
+        return Targets.build(content);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+  Project:  Project 1
+  Description:  Handles on the lexer, parser and Swing builder for the
+                benchmarks.
+ */
+
+package benchmarks;
+
+import javax.swing.*;
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+
+
+/**
+ * JMH only accepts benchmarks in a named package, and a named package cannot
+ * refer to the classes in <code>src/</code>, which are in the default
+ * package.  The few members the benchmarks call are looked up once here and
+ * invoked through method handles, which costs a few nanoseconds per call.
+ */
+final class Targets {
+    private static final MethodHandle LEXER;
+    private static final MethodHandle FILE_LEXER;
+    private static final MethodHandle ANALYZE_FILE;
+    private static final MethodHandle PARSER;
+    private static final MethodHandle PARSE_FILE;
+    private static final MethodHandle TREE;
+    private static final MethodHandle ERROR_MESSAGE;
+    private static final MethodHandle WINDOW_LAYOUT;
+    private static final MethodHandle WINDOW_WIDGETS;
+    private static final MethodHandle PANEL;
+    private static final MethodHandle BUILD_WIDGET;
+
+    static {
+        try {
+            Class<?> lexer = Class.forName("Main$Lexer");
+            Class<?> parser = Class.forName("Main$Parser");
+            Class<?> window = Class.forName("LayoutTree$Window");
+            Class<?> layout = Class.forName("LayoutTree$Layout");
+            Class<?> panel = Class.forName("LayoutTree$Panel");
+            Class<?> widget = Class.forName("LayoutTree$Widget");
+
+            LEXER = constructor(lexer, char[].class, int.class, int.class)
+                    .asType(MethodType.methodType(Object.class, char[].class, int.class, int.class));
+            FILE_LEXER = constructor(lexer, File.class)
+                    .asType(MethodType.methodType(Object.class, File.class));
+            ANALYZE_FILE = method(lexer, "analyzeFile")
+                    .asType(MethodType.methodType(int.class, Object.class));
+            PARSER = constructor(parser, lexer)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            PARSE_FILE = method(parser, "parseFile")
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            ERROR_MESSAGE = method(parser, "errorMessage")
+                    .asType(MethodType.methodType(String.class, Object.class));
+            Field tree = parser.getDeclaredField("tree");
+            tree.setAccessible(true);
+            TREE = MethodHandles.lookup().unreflectGetter(tree)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            WINDOW_LAYOUT = method(window, "layout")
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            WINDOW_WIDGETS = method(window, "widgets")
+                    .asType(MethodType.methodType(List.class, Object.class));
+            PANEL = constructor(panel, layout, List.class)
+                    .asType(MethodType.methodType(Object.class, Object.class, List.class));
+            BUILD_WIDGET = method(Class.forName("SwingBuilder"), "buildWidget", widget)
+                    .asType(MethodType.methodType(JComponent.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Targets() {
+    }
+
+    /**
+     * Runs the lexer alone over <code>source</code>.
+     *
+     * @return Number of tokens
+     */
+    static int lex(char[] source) throws Throwable {
+        Object lexer = LEXER.invokeExact(source, 0, source.length);
+        return (int) ANALYZE_FILE.invokeExact(lexer);
+    }
+
+    /**
+     * Runs the lexer alone over a file, which is memory-mapped.
+     *
+     * @return Number of tokens
+     */
+    static int lex(File file) throws Throwable {
+        return (int) ANALYZE_FILE.invokeExact((Object) FILE_LEXER.invokeExact(file));
+    }
+
+    /**
+     * Lexes and parses a file.
+     *
+     * @return The <code>LayoutTree.Window</code>, or null if the file is
+     * not valid
+     */
+    static Object parse(File file) throws Throwable {
+        Object parser = PARSER.invokeExact((Object) FILE_LEXER.invokeExact(file));
+        if (!(boolean) PARSE_FILE.invokeExact(parser))
+            return null;
+
+        return (Object) TREE.invokeExact(parser);
+    }
+
+    /**
+     * Lexes and parses <code>source</code>.
+     *
+     * @return The <code>LayoutTree.Window</code>, or null if the source is
+     * not valid
+     */
+    static Object parse(char[] source) throws Throwable {
+        Object parser = PARSER.invokeExact((Object) LEXER.invokeExact(source, 0, source.length));
+        if (!(boolean) PARSE_FILE.invokeExact(parser))
+            return null;
+
+        return (Object) TREE.invokeExact(parser);
+    }
+
+    /**
+     * Error message of <code>source</code>, or null if it is valid.
+     */
+    static String error(char[] source) throws Throwable {
+        Object parser = PARSER.invokeExact((Object) LEXER.invokeExact(source, 0, source.length));
+        if ((boolean) PARSE_FILE.invokeExact(parser))
+            return null;
+
+        return (String) ERROR_MESSAGE.invokeExact(parser);
+    }
+
+    /**
+     * Wraps the widgets of a window in a panel with the window's layout.
+     * Building that panel creates the same components as
+     * <code>SwingBuilder.build()</code> minus the <code>JFrame</code>, which
+     * cannot be created on a headless benchmark machine.
+     */
+    static Object contentPanel(Object window) throws Throwable {
+        return (Object) PANEL.invokeExact((Object) WINDOW_LAYOUT.invokeExact(window),
+                (List) WINDOW_WIDGETS.invokeExact(window));
+    }
+
+    static JComponent build(Object widget) throws Throwable {
+        return (JComponent) BUILD_WIDGET.invokeExact(widget);
+    }
+
+    private static MethodHandle constructor(Class<?> type, Class<?>... parameters) throws ReflectiveOperationException {
+        Constructor<?> constructor = type.getDeclaredConstructor(parameters);
+        constructor.setAccessible(true);
+        return MethodHandles.lookup().unreflectConstructor(constructor);
+    }
+
+    private static MethodHandle method(Class<?> type, String name, Class<?>... parameters)
+            throws ReflectiveOperationException {
+        Method method = type.getDeclaredMethod(name, parameters);
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method);
+    }
+}
@@ -0,0 +1,796 @@
+/*
+  Project:  Project 1
+  Description:  Checks the lexer and parser against the layout files in
+                tests/ and pins down the behavior the changes rely on.
+ */
+
+import javax.swing.*;
+import javax.tools.ToolProvider;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+
+/**
+ * The project has no build file or test framework, so the checks are a
+ * plain program compiled with the application classes, from the
+ * <code>Project1</code> directory:
+ * <pre>
+ *   javac -d checks-out src/*.java checks/LayoutChecks.java
+ *   java -cp checks-out LayoutChecks tests
+ * </pre>
+ * Each check prints one line, and the exit status is 1 if any failed.
+ * Checks of the command line run <code>Main</code> in a JVM of its own,
+ * with the same class path.
+ */
+public class LayoutChecks {
+    private static final String[] VALID = {"test-calculator", "test-nested", "test-radbuttons"};
+    /**
+     * What the parser reports for <code>test-syntax</code>, whose panel is
+     * closed by "End." instead of "End;" at line 15, column 4.
+     */
+    private static final String SYNTAX_ERROR = "Widget: Panel: \"Semicolon\" token not found (found Period \".\").";
+    /**
+     * Windows the grammar accepts, which between them use every production.
+     */
+    private static final String[] ACCEPTED = {
+            "Window \"A\" (1, 2) Layout Flow: Button \"x\"; Label \"\"; Textfield 5; End.",
+            "Window \"A\" (1, 2) Layout Grid(2, 3): Button \"x\"; End.",
+            "Window \"A\" (1, 2) Layout Grid(2, 3, 4, 5): Button \"x\"; End.",
+            "Window \"A\" (1, 2) Layout Flow: Panel Layout Grid(1, 1): Panel Layout Flow: Label \"a b\"; End; End;"
+                    + " Button \"y\"; End.",
+            "Window \"A\" (1, 2) Layout Flow: Group Radio \"a\"; Radio \"b\"; End; End.",
+    };
+    /**
+     * Windows with one mistake each.
+     */
+    private static final String[] REJECTED = {
+            "Window \"A\" (1, 2) Layout Flow: End.",
+            "Window \"A\" (1, 2) Layout Flow: Panel Layout Flow: End; End.",
+            "Window \"A\" (1, 2) Layout Grid(2, 3, 4): Button \"x\"; End.",
+            "Window \"A\" (1, 2) Layout Flow: Group End; End.",
+            "Window \"A\" (1, 2) Layout Flow: Button \"x\" End.",
+            "Window \"A\" (1, 2) Layout Flow: Button ; End.",
+            "Window \"A\" (1, 2) Layout Flow: Textfield x; End.",
+            "Window \"A\" (1, 2) Layout Flow: Button \"x\";",
+            "Window \"A\" (1, 2) Layout Flow: Radio \"a\"; End.",
+            "Window A (1, 2) Layout Flow: Button \"x\"; End.",
+            "Window \"A\" (1) Layout Flow: Button \"x\"; End.",
+            "Window \"A\" (1, 2) Flow: Button \"x\"; End.",
+    };
+
+    /**
+     * Pieces of text the random edits insert.
+     */
+    private static final String[] EDITS = {
+            "", " ", "x", ";", "\"", "End;", "Label \"y\"; ", "Panel Layout Flow: Button \"z\"; End; ",
+            "Group Radio \"r\"; End; ", "Textfield 3; ", "Layout Grid(1, 2): ",
+    };
+
+    private static File tests;
+    private static int checks;
+    private static int failed;
+
+    /**
+     * A check fails by throwing.
+     */
+    private interface Check {
+        void run() throws Exception;
+    }
+
+    /**
+     * Output and exit status of a run of <code>Main</code>.
+     */
+    private record Run(int status, String output) {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        // Lex files of a megabyte or more in 64 KB chunks, before Main.Lexer is loaded.
+        System.setProperty("layout.parallelSize", String.valueOf(1 << 20));
+        System.setProperty("layout.chunkSize", String.valueOf(1 << 16));
+        tests = new File(args.length > 0 ? args[0] : "tests");
+
+        check("valid layouts pass", () -> {
+            for (String name : VALID) {
+                Run run = layout(file(name).getPath());
+                expect(run.status == 0, name + " exited with " + run.status);
+                expect(run.output.equals(file(name) + ": OK\n"), name + " printed " + run.output);
+            }
+        });
+        check("test-syntax is rejected at the unclosed panel", () -> {
+            Run run = layout(file("test-syntax").getPath());
+            expect(run.status == 1, "exited with " + run.status);
+            expect(run.output.equals("Error: Incorrect syntax at line 15, column 4: " + SYNTAX_ERROR + "\n"
+                    + file("test-syntax") + ": FAILED\n"), "printed " + run.output);
+        });
+        check("validation loads no Swing or AWT class", () -> {
+            Run run = java(List.of("-verbose:class"), file("test-nested").getPath());
+            expect(run.status == 0, "exited with " + run.status);
+            for (String line : run.output.split("\n"))
+                expect(!line.contains(" javax.swing.") && !line.contains(" java.awt."), "loaded " + line);
+        });
+        check("batch mode reports every file", () -> {
+            Run run = layout("--batch", tests.getPath());
+            expect(run.status == 1, "exited with " + run.status);
+            StringBuilder expected = new StringBuilder();
+            for (String name : VALID)
+                expected.append(file(name)).append(": OK\n");
+            expected.append(file("test-syntax")).append(":15:4: ").append(SYNTAX_ERROR)
+                    .append("\n\n4 files, 3 passed, 1 failed\n");
+            expect(run.output.equals(expected.toString()), "printed " + run.output);
+        });
+        check("the parser accepts exactly the grammar", () -> {
+            for (String source : ACCEPTED)
+                expect(parses(source), "rejected " + source);
+            for (String source : REJECTED)
+                expect(!parses(source), "accepted " + source);
+        });
+        check("incremental edits give the tree of a full parse", () -> {
+            Random random = new Random(8);
+            String source = Files.readString(file("test-nested").toPath());
+            IncrementalDocument document = new IncrementalDocument(source);
+            for (int x = 0; x < 2000; x++) {
+                int offset = random.nextInt(source.length() + 1);
+                String removed = source.substring(offset, Math.min(offset + random.nextInt(4), source.length()));
+                String inserted = EDITS[random.nextInt(EDITS.length)];
+                source = edit(document, source, offset, removed, inserted, x);
+                if (document.tree() == null)
+                    source = edit(document, source, offset, inserted, removed, x);
+            }
+            expect(document.incrementalParses() > 0, "no edit was reparsed incrementally");
+        });
+        check("a swapped panel matches a rebuilt window", () -> onEventThread(() -> {
+            String source = Files.readString(file("test-nested").toPath());
+            IncrementalDocument document = new IncrementalDocument(source);
+            JInternalFrame window = new JInternalFrame();
+            window.setContentPane(content(document.tree()));
+
+            int offset = source.indexOf("\"5th Panel\"");
+            expect(LayoutPreview.edit(document, source.substring(0, offset) + "\"Fifth\"; Button \"b\""
+                    + source.substring(offset + "\"5th Panel\"".length())), "edit was not applied");
+            expect(document.changedPath() != null, "edit was not reparsed incrementally");
+            SwingBuilder.replacePanel(window, document.tree(), document.changedPath());
+
+            String rebuilt = describe(content(document.tree()));
+            expect(describe(window.getContentPane()).equals(rebuilt), "components differ");
+            expect(rebuilt.contains("Fifth"), "new label missing");
+        }));
+        check("cached trees equal parsed trees", () -> {
+            Path directory = Files.createTempDirectory("layout-cache");
+            List<String> paths = new ArrayList<>(List.of("--cache", directory.toString()));
+            for (String name : VALID) {
+                byte[] source = Files.readAllBytes(file(name).toPath());
+                LayoutTree.Window tree = tree(file(name));
+                new LayoutCache(directory, 1).put(LayoutCache.key(source), tree);
+                expect(tree.equals(new LayoutCache(directory, 1).get(LayoutCache.key(source))), name + " differs");
+                paths.add(file(name).getPath());
+            }
+
+            Run run = layout(paths.toArray(String[]::new));
+            expect(run.output.endsWith("Cache: 3 hits (3 from disk), 0 misses, 0 evictions\n"),
+                    "printed " + run.output);
+        });
+        check("the lexer on its own counts every token", () -> {
+            String[] names = {"test-calculator", "test-nested", "test-radbuttons", "test-syntax"};
+            int[] counts = {87, 63, 47, 85};
+            for (int x = 0; x < names.length; x++) {
+                int count = new Main.Lexer(file(names[x])).analyzeFile();
+                expect(count == counts[x], names[x] + " has " + count + " tokens");
+            }
+        });
+        check("deep nesting parses without a stack overflow", () -> {
+            String source = nested(200_000);
+            Main.Parser parser = new Main.Parser(new Main.Lexer(source.toCharArray(), 0, source.length()));
+            parser.maxDepth = 200_000;
+            expect(parser.parseFile(), "rejected: " + parser.errorMessage());
+
+            parser = new Main.Parser(new Main.Lexer(source.toCharArray(), 0, source.length()));
+            parser.maxDepth = 1000;
+            expect(!parser.parseFile(), "accepted beyond the limit");
+            expect(parser.error.contains("Panels nested deeper than layout.maxDepth allows."),
+                    "reported " + parser.error);
+        });
+        check("large panels are built in full by default", () -> {
+            LayoutTree.Panel grid = grid(100, 100);
+            for (LayoutTree.Panel node : List.of(grid, new LayoutTree.Panel(LayoutTree.Layout.FLOW, grid.widgets()))) {
+                JComponent panel = SwingBuilder.buildWidget(node);
+                expect(!(panel instanceof LazyPanel), "built a lazy panel");
+                expect(panel.getComponentCount() == 10_000, "built " + panel.getComponentCount() + " components");
+            }
+        });
+        check("a lazy grid creates only visible cells, where GridLayout puts them", () -> onEventThread(() -> {
+            LayoutTree.Panel grid = grid(100, 100);
+            JComponent eager = SwingBuilder.buildWidget(grid);
+            LazyGridPanel lazy = new LazyGridPanel(grid.layout(), grid.widgets());
+            lazy.setBorder(eager.getBorder());
+            JViewport viewport = new JViewport();
+            viewport.setView(lazy);
+            viewport.setSize(400, 300);
+            for (JComponent panel : new JComponent[]{eager, lazy}) {
+                panel.setSize(eager.getPreferredSize());
+                panel.doLayout();
+            }
+            viewport.setViewPosition(new Point(2000, 1000));
+            lazy.doLayout();
+
+            expect(lazy.getComponentCount() < 500, "created " + lazy.getComponentCount() + " cells");
+            Map<String, Rectangle> bounds = new HashMap<>();
+            for (Component component : eager.getComponents())
+                bounds.put(((JButton) component).getText(), component.getBounds());
+            for (Component component : lazy.getComponents()) {
+                String text = ((JButton) component).getText();
+                expect(component.getBounds().equals(bounds.get(text)), text + " is at " + component.getBounds());
+            }
+            expect(lazy.getComponentAt(2000, 1000) != lazy, "nothing created in view");
+        }));
+        check("a lazy flow panel creates only visible cells, where FlowLayout puts them", () -> onEventThread(() -> {
+            Random random = new Random(23);
+            List<LayoutTree.Widget> widgets = new ArrayList<>();
+            for (int x = 0; x < 5000; x++) {
+                String text = x + "x".repeat(random.nextInt(12));
+                widgets.add(random.nextInt(3) == 0 ? new LayoutTree.Label(text) : new LayoutTree.Button(text));
+            }
+            JComponent eager = SwingBuilder.buildWidget(new LayoutTree.Panel(LayoutTree.Layout.FLOW, widgets));
+            LazyFlowPanel lazy = new LazyFlowPanel(widgets);
+            lazy.setBorder(eager.getBorder());
+            JViewport viewport = new JViewport();
+            viewport.setView(lazy);
+            viewport.setSize(400, 300);
+            Dimension preferred = lazy.getPreferredSize();
+            expect(preferred.equals(eager.getPreferredSize()), "preferred size " + preferred);
+
+            for (int width : new int[]{600, 900, 600}) {
+                for (JComponent panel : new JComponent[]{eager, lazy}) {
+                    panel.setSize(width, 100_000);
+                    panel.doLayout();
+                }
+                for (int y : new int[]{0, 3000, 3100}) {
+                    viewport.setViewPosition(new Point(100, y));
+                    lazy.doLayout();
+                    expect(lazy.getComponentCount() > 0 && lazy.getComponentCount() < 500,
+                            "created " + lazy.getComponentCount() + " cells");
+                    Map<String, Rectangle> bounds = new HashMap<>();
+                    for (Component component : eager.getComponents())
+                        bounds.put(describe(component), component.getBounds());
+                    for (Component component : lazy.getComponents()) {
+                        if (component.isVisible()) {
+                            expect(component.getBounds().equals(bounds.get(describe(component))),
+                                    describe(component) + " is at " + component.getBounds() + " at width " + width);
+                        }
+                    }
+                }
+            }
+        }));
+        check("removing wrapper panels leaves the rendering unchanged", () -> onEventThread(() -> {
+            String source = "Window \"A\" (1, 2) Layout Flow:"
+                    + " Panel Layout Flow: Label \"a\"; End;"
+                    + " Panel Layout Grid(1, 1): Panel Layout Flow: Panel Layout Flow: Label \"b\"; End; End; End;"
+                    + " Panel Layout Grid(2, 1): Panel Layout Grid(1, 1): Label \"c\"; End; Button \"d\"; End;"
+                    + " End.";
+            Main.Parser parser = new Main.Parser(new Main.Lexer(source.toCharArray(), 0, source.length()));
+            expect(parser.parseFile(), parser.errorMessage());
+            LayoutOptimizer optimizer = new LayoutOptimizer();
+            JComponent optimized = content(optimizer.optimize(parser.tree));
+            JComponent original = content(parser.tree);
+            expect(optimizer.removedPanels() == 4, "removed " + optimizer.removedPanels() + " panels");
+
+            Dimension preferred = original.getPreferredSize();
+            expect(optimized.getPreferredSize().equals(preferred), "preferred size " + optimized.getPreferredSize());
+            for (Dimension size : new Dimension[]{preferred, new Dimension(90, 200), new Dimension(400, 120)}) {
+                int[] pixels = paint(original, size);
+                expect(Arrays.stream(pixels).distinct().count() > 2, "nothing painted at " + size);
+                expect(Arrays.equals(pixels, paint(optimized, size)), "differs at " + size);
+            }
+        }));
+        check("every syntax error is reported at its line and column", () -> {
+            String source = "Window \"A\" (1, 2) Layout Flow:\n"
+                    + "  Button \"x\"\n"
+                    + "  Label \"y\";\n"
+                    + "  Panel Layout Grid(1, x): Textfield 5; End;\n"
+                    + "  Textfield 99999999999;\n"
+                    + "End.";
+            Main.Parser parser = new Main.Parser(new Main.Lexer(source.toCharArray(), 0, source.length()));
+            expect(!parser.parseFile(), "accepted");
+            List<String> found = new ArrayList<>();
+            for (Diagnostic diagnostic : parser.diagnostics)
+                found.add(diagnostic.line() + ":" + diagnostic.column() + " " + diagnostic.code());
+            expect(found.equals(List.of("3:3 UNEXPECTED_TOKEN", "4:24 UNEXPECTED_TOKEN", "5:13 INVALID_NUMBER")),
+                    "reported " + found);
+        });
+        check("positions stay right after the token table is compacted", () -> {
+            String source = "Window \"A\" (1, 2) Layout Flow:\n" + "  Label \"x\";  Button \"y\";\n".repeat(5000)
+                    + "  Label \"z\" End.";
+            Main.Parser parser = new Main.Parser(new Main.Lexer(source.toCharArray(), 0, source.length()));
+            expect(!parser.parseFile(), "accepted");
+            Diagnostic diagnostic = parser.diagnostics.get(0);
+            expect(diagnostic.line() == 5002 && diagnostic.column() == 13,
+                    "reported " + diagnostic.line() + ":" + diagnostic.column());
+        });
+        check("a diagnostic keeps its own expected types", () -> {
+            EnumSet<Main.TokenType> expected = EnumSet.of(Main.TokenType.SEMICOLON, Main.TokenType.COMMA);
+            Diagnostic diagnostic = new Diagnostic(Diagnostic.Code.UNEXPECTED_TOKEN, 1, 1, 0, 1, "Widget",
+                    expected, Main.TokenType.END, "End");
+            expected.clear();
+            String message = "Widget: \"Semicolon\" or \"Comma\" token not found (found End \"End\").";
+            expect(diagnostic.message().equals(message), "printed " + diagnostic.message());
+        });
+        check("metrics count what was parsed", () -> {
+            Run run = java(List.of("-Dlayout.metrics=true"), file("test-nested").getPath(),
+                    file("test-syntax").getPath());
+            long bytes = file("test-nested").length() + file("test-syntax").length();
+            for (String line : new String[]{"Files parsed:       2", "Bytes read:         " + bytes,
+                    "Tokens lexed:       148", "Syntax errors:      1", "Max nesting:        4"})
+                expect(run.output.contains("\n" + line + "\n"), "missing " + line + " in " + run.output);
+        });
+        check("repeated lexemes share one string", () -> {
+            String source = "Window \"A\" (1, 2) Layout Flow:" + " Label \"same\"; Button \"same\";".repeat(3000)
+                    + " End.";
+            LayoutTree.Window tree = tree(source);
+            String first = ((LayoutTree.Label) tree.widgets().get(0)).text();
+            for (LayoutTree.Widget widget : tree.widgets()) {
+                String text = widget instanceof LayoutTree.Label label ? label.text()
+                        : ((LayoutTree.Button) widget).text();
+                expect(text == first, "a second string for " + text);
+            }
+        });
+        check("compiled layouts are valid Java under any accepted name", () -> {
+            for (String name : new String[]{"P1", "List", "JFrame", "Main", "LayoutTree", "class", "9x"})
+                expect(!LayoutCompiler.isClassName(name), "accepted " + name);
+
+            Path directory = Files.createTempDirectory("layout-compiled");
+            List<String> sources = new ArrayList<>();
+            for (String name : VALID) {
+                String className = "Compiled_" + name.replace('-', '_');
+                expect(LayoutCompiler.isClassName(className), "rejected " + className);
+                Run run = layout("--compile", file(name).getPath(), className, directory.toString());
+                expect(run.status == 0, name + " printed " + run.output);
+                sources.add(directory.resolve(className + ".java").toString());
+            }
+            Run run = layout("--compile", file("test-nested").getPath(), "P1", directory.toString());
+            expect(run.output.equals("Error: P1 cannot be used as the class name!\n"), "printed " + run.output);
+
+            List<String> arguments = new ArrayList<>(List.of("-cp", System.getProperty("java.class.path"), "-d",
+                    directory.toString()));
+            arguments.addAll(sources);
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            int status = ToolProvider.getSystemJavaCompiler().run(null, null, errors, arguments.toArray(String[]::new));
+            expect(status == 0, "javac failed: " + errors);
+        });
+        check("lexing in parallel chunks gives the tree and errors of lexing in order", () -> {
+            for (int errors = 0; errors <= 3; errors++) {
+                String source = large(new Random(errors), errors);
+                Path file = Files.createTempFile("layout", null);
+                try {
+                    Files.writeString(file, source, StandardCharsets.UTF_8);
+                    expect(Files.size(file) >= Main.Lexer.PARALLEL_SIZE, "file too small to split");
+                    Main.Parser chunked = new Main.Parser(new Main.Lexer(file.toFile()));
+                    Main.Parser ordered = new Main.Parser(new Main.Lexer(source.toCharArray(), 0, source.length()));
+                    expect(chunked.parseFile() == (errors == 0), errors + " errors: parse result");
+                    expect(ordered.parseFile() == (errors == 0), errors + " errors: parse result in order");
+                    expect(Objects.equals(chunked.tree, ordered.tree), errors + " errors: trees differ");
+                    expect(chunked.diagnostics.equals(ordered.diagnostics), errors + " errors: diagnostics differ");
+                } finally {
+                    Files.delete(file);
+                }
+            }
+        });
+        check("binary layouts read back as the tree they were written from", () -> {
+            List<LayoutTree.Window> trees = new ArrayList<>();
+            for (String name : VALID)
+                trees.add(tree(file(name)));
+            trees.add(tree(nested(50_000)));
+            trees.add(tree(large(new Random(20), 0)));
+            for (int x = 0; x < trees.size(); x++) {
+                LayoutTree.Window tree = trees.get(x);
+                // The records compare recursively, so the deep tree is compared through its binary form.
+                byte[] bytes = LayoutBinary.write(tree);
+                LayoutTree.Window read = new LayoutBinary(ByteBuffer.wrap(bytes)).tree();
+                expect(Arrays.equals(LayoutBinary.write(read), bytes), tree.title() + ": binary tree differs");
+                expect(Arrays.equals(LayoutBinary.write(tree(LayoutPrinter.print(read))), bytes),
+                        tree.title() + ": printed tree differs");
+                if (x < VALID.length)
+                    expect(read.equals(tree), tree.title() + ": tree differs");
+            }
+        });
+        check("a corrupt binary layout fails with IllegalArgumentException", () -> {
+            byte[] bytes = LayoutBinary.write(tree(file("test-calculator")));
+            Random random = new Random(20);
+            for (int x = 0; x < 2000; x++) {
+                byte[] corrupt = bytes.clone();
+                for (int y = 1 + random.nextInt(4); y > 0; y--)
+                    corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt(256);
+                try {
+                    new LayoutBinary(ByteBuffer.wrap(corrupt)).tree();
+                } catch (IllegalArgumentException e) {
+                    // Expected for most corruptions
+                }
+            }
+        });
+        check("converting to binary and back validates the same", () -> {
+            Path directory = Files.createTempDirectory("layout-binary");
+            Path source = directory.resolve("deep");
+            Files.writeString(source, nested(20_000));
+            Path binary = directory.resolve("deep.bin");
+            Path printed = directory.resolve("deep.txt");
+            expect(layout("--convert", source.toString(), binary.toString()).status == 0, "not converted to binary");
+            expect(layout("--convert", binary.toString(), printed.toString()).status == 0, "not converted to source");
+            for (Path file : List.of(binary, printed)) {
+                Run run = layout(file.toString());
+                expect(run.output.equals(file + ": OK\n"), "printed " + run.output);
+            }
+        });
+        check("the server confines paths to its root and reuses its lexer", () -> {
+            Path root = Files.createTempDirectory("layout-root");
+            Files.copy(file("test-nested").toPath(), root.resolve("inside"));
+            Files.createSymbolicLink(root.resolve("link"), file("test-nested").getAbsoluteFile().toPath());
+            Path requests = root.resolve("requests");
+            Files.writeString(requests, String.join("\n",
+                    "{\"id\": 1, \"path\": \"inside\"}",
+                    "{\"id\": 2, \"path\": \"../" + root.getFileName() + "/inside\"}",
+                    "{\"id\": 3, \"path\": \"" + root.resolve("inside") + "\"}",
+                    "{\"id\": 4, \"path\": \"../\"}",
+                    "{\"id\": 5, \"path\": \"" + file("test-nested").getAbsolutePath() + "\"}",
+                    "{\"id\": 6, \"path\": \"link\"}",
+                    "{\"id\": 7, \"path\": \"missing\"}",
+                    "{\"id\": 8, \"source\": \"Window \\\"A\\\" (1, 2) Layout Flow:\\n\\n Buton \\\"x\\\";\\nEnd.\"}")
+                    + "\n");
+            Run run = java(List.of(), ProcessBuilder.Redirect.from(requests.toFile()),
+                    "--serve", "--threads", "1", "--root", root.toString());
+            Map<String, String> answers = new HashMap<>();
+            for (String line : run.output.split("\n"))
+                answers.put(line.substring(0, line.indexOf(',')), line);
+            expect(answers.size() == 8, "answered " + run.output);
+            String outside = "\"ok\": false, \"error\": \"Path outside the served directory!\"}";
+            for (int id = 1; id <= 7; id++) {
+                String answer = answers.get("{\"id\": " + id);
+                String expected = id <= 3 ? "\"ok\": true" : id <= 6 ? outside : "File not found!";
+                expect(answer != null && answer.contains(expected), "answered " + answer + " to " + id);
+            }
+            expect(answers.get("{\"id\": 8").contains("\"line\": 3, \"column\": 2"),
+                    "answered " + answers.get("{\"id\": 8") + " after reusing the lexer");
+        });
+        check("equal subtrees are shared and the tree stays the same", () -> {
+            String row = "Panel Layout Grid(1, 3): Button \"7\"; Button \"8\";"
+                    + " Panel Layout Flow: Label \"9\"; End; End;\n";
+            String source = "Window \"Keys\" (300, 400) Layout Grid(4, 1):\n" + row.repeat(4) + "End.\n";
+            LayoutTree.Window tree = tree(source);
+            for (LayoutTree.Widget widget : tree.widgets())
+                expect(widget == tree.widgets().get(0), "a row is not shared");
+            LayoutTree.Panel first = (LayoutTree.Panel) tree.widgets().get(0);
+            expect(first.widgets().get(0) != first.widgets().get(1), "different buttons are shared");
+            expect(tree.equals(new IncrementalDocument(source).tree()), "shared tree differs from the unshared one");
+        });
+        check("the prescan rejects only files the parser rejects", () -> {
+            Random random = new Random(24);
+            String valid = large(random, 0);
+            expect(LayoutPrescan.check(ByteBuffer.wrap(valid.getBytes(StandardCharsets.UTF_8))) == null,
+                    "rejected a valid file");
+            for (int x = 0; x < 40; x++) {
+                int at = random.nextInt(valid.length() - 20);
+                String broken = valid.substring(0, at) + valid.substring(at + 1 + random.nextInt(20));
+                if (LayoutPrescan.check(ByteBuffer.wrap(broken.getBytes(StandardCharsets.UTF_8))) != null) {
+                    Main.Parser parser = new Main.Parser(new Main.Lexer(broken.toCharArray(), 0, broken.length()));
+                    expect(!parser.parseFile(), "rejected a file the parser accepts, cut at " + at);
+                }
+            }
+
+            Path file = Files.createTempFile("layout", null);
+            try {
+                Files.writeString(file, valid.substring(0, valid.lastIndexOf("End.")), StandardCharsets.UTF_8);
+                Main.Parser parser = new Main.Parser(new Main.Lexer(file.toFile()));
+                expect(!parser.parseFile(), "accepted an unclosed window");
+                expect(parser.diagnostics.size() == 1 && parser.diagnostics.get(0).code() == Diagnostic.Code.UNCLOSED,
+                        "reported " + parser.diagnostics);
+            } finally {
+                Files.delete(file);
+            }
+        });
+        check("parse events describe the tree, and parsing without one finds the same errors", () -> {
+            Random random = new Random(25);
+            for (String name : VALID) {
+                String valid = Files.readString(file(name).toPath());
+                for (int x = 0; x < 300; x++) {
+                    int at = random.nextInt(valid.length());
+                    int end = Math.min(valid.length(), at + 1 + random.nextInt(8));
+                    String source = x == 0 ? valid : valid.substring(0, at) + valid.substring(end);
+                    Main.Parser built = new Main.Parser(new Main.Lexer(source.toCharArray(), 0, source.length()));
+                    Main.Parser streamed = new Main.Parser(new Main.Lexer(source.toCharArray(), 0, source.length()));
+                    StringBuilder events = new StringBuilder();
+                    streamed.listener = new EventLog(events);
+                    boolean passed = built.parseFile();
+                    expect(streamed.parseFile() == passed, name + " cut at " + at + ": parse result");
+                    expect(streamed.diagnostics.equals(built.diagnostics), name + " cut at " + at + ": diagnostics");
+                    expect(streamed.tree == null, name + " cut at " + at + ": built a tree for a listener");
+                    if (passed)
+                        expect(events.toString().equals(events(built.tree)), name + " cut at " + at + ": events");
+                }
+            }
+        });
+
+        System.out.printf("\n%d checks, %d failed\n", checks, failed);
+        if (failed > 0)
+            System.exit(1);
+    }
+
+    private static void check(String name, Check check) {
+        checks++;
+        try {
+            check.run();
+            System.out.println("ok      " + name);
+        } catch (Exception | AssertionError e) {
+            failed++;
+            System.out.println("FAILED  " + name + ": " + e);
+        }
+    }
+
+    /**
+     * Runs a check of Swing components on the Event Dispatch Thread, so
+     * the events they post cannot run in the middle of it.
+     */
+    private static void onEventThread(Check check) throws Exception {
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                try {
+                    check.run();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof AssertionError error)
+                throw error;
+            throw e;
+        }
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private static File file(String name) {
+        return new File(tests, name);
+    }
+
+    /**
+     * Replaces <code>removed</code> by <code>inserted</code> at
+     * <code>offset</code>, and expects the tree a full parse of the new
+     * source gives.
+     *
+     * @return The new source
+     */
+    private static String edit(IncrementalDocument document, String source, int offset, String removed,
+                               String inserted, int step) {
+        document.edit(offset, removed.length(), inserted);
+        source = source.substring(0, offset) + inserted + source.substring(offset + removed.length());
+        expect(document.text().equals(source), "text differs after edit " + step);
+        expect(Objects.equals(document.tree(), new IncrementalDocument(source).tree()),
+                "tree differs after edit " + step + ":\n" + source);
+        return source;
+    }
+
+    /**
+     * The components <code>SwingBuilder.build()</code> puts in a window,
+     * which cannot be created headless, in a panel instead.
+     */
+    private static JComponent content(LayoutTree.Window tree) {
+        return SwingBuilder.buildWidget(new LayoutTree.Panel(tree.layout(), tree.widgets()));
+    }
+
+    /**
+     * Lays out <code>component</code> at <code>size</code> and paints it.
+     *
+     * @return The pixels
+     */
+    private static int[] paint(JComponent component, Dimension size) {
+        component.setSize(size);
+        layOut(component);
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        Graphics graphics = image.getGraphics();
+        component.paint(graphics);
+        graphics.dispose();
+        return image.getRGB(0, 0, size.width, size.height, null, 0, size.width);
+    }
+
+    private static void layOut(Container container) {
+        container.doLayout();
+        for (Component child : container.getComponents())
+            if (child instanceof Container inner)
+                layOut(inner);
+    }
+
+    /**
+     * Component tree as text: the class and text of every component.
+     */
+    private static String describe(Component component) {
+        StringBuilder description = new StringBuilder(component.getClass().getSimpleName());
+        if (component instanceof AbstractButton button)
+            description.append(" \"").append(button.getText()).append('"');
+        else if (component instanceof JLabel label)
+            description.append(" \"").append(label.getText()).append('"');
+        if (component instanceof Container container && container.getComponentCount() > 0) {
+            description.append(" [");
+            for (Component child : container.getComponents())
+                description.append(describe(child)).append(", ");
+            description.append("]");
+        }
+        return description.toString();
+    }
+
+    /**
+     * Parses <code>source</code> from a file, as <code>Main</code> would.
+     */
+    private static boolean parses(String source) throws IOException {
+        Path file = Files.createTempFile("layout", null);
+        try {
+            Files.writeString(file, source, StandardCharsets.UTF_8);
+            return new Main.Parser(new Main.Lexer(file.toFile())).parseFile();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A window holding one label inside <code>depth</code> nested panels.
+     */
+    private static String nested(int depth) {
+        StringBuilder source = new StringBuilder("Window \"A\" (1, 2) Layout Flow:\n");
+        source.append("Panel Layout Flow:\n".repeat(depth));
+        source.append("Label \"x\";\n");
+        source.append("End;\n".repeat(depth));
+        return source.append("End.\n").toString();
+    }
+
+    /**
+     * A grid panel of buttons, each with its own text.
+     */
+    private static LayoutTree.Panel grid(int rows, int columns) {
+        List<LayoutTree.Widget> buttons = new ArrayList<>();
+        for (int x = 0; x < rows * columns; x++)
+            buttons.add(new LayoutTree.Button("b" + x));
+        return new LayoutTree.Panel(new LayoutTree.Layout(Main.TokenType.GRID, rows, columns, 2, 3), buttons);
+    }
+
+    /**
+     * A window of about 1.5 MB with nested panels, strings that span lines,
+     * "\r\n" line ends and <code>errors</code> misspelled keywords.
+     */
+    private static String large(Random random, int errors) {
+        StringBuilder source = new StringBuilder("Window \"Large\" (800, 600) Layout Grid(0, 4):\n");
+        int error = errors == 0 ? -1 : 0;
+        for (int panel = 0; source.length() < 3 << 19; panel++) {
+            source.append("  Panel Layout Flow:").append(random.nextBoolean() ? "\r\n" : "\n");
+            for (int widget = 1 + random.nextInt(20); widget > 0; widget--) {
+                switch (random.nextInt(4)) {
+                    case 0 -> source.append("    Label \"line one\nline ").append(panel).append("\";\n");
+                    case 1 -> source.append("    Button \"").append(widget).append("\"; Textfield 8;\n");
+                    case 2 -> source.append("    Group Radio \"a\"; Radio \"b\"; End;\n");
+                    default -> source.append("    Panel Layout Grid(1, 2, 3, 4): Label \"\"; End;\n");
+                }
+            }
+            if (error >= 0 && error < errors && random.nextInt(500) == 0) {
+                source.append("    Buton \"x\";\n");
+                error++;
+            }
+            source.append("  End;\n");
+        }
+        for (; error >= 0 && error < errors; error++)
+            source.append("  Buton \"x\";\n");
+        return source.append("End.\n").toString();
+    }
+
+    /**
+     * Writes each parse event on a line of its own.
+     */
+    private record EventLog(StringBuilder out) implements LayoutListener {
+        @Override
+        public void onWindowStart(String title, int width, int height) {
+            out.append("window ").append(title).append(' ').append(width).append(' ').append(height).append('\n');
+        }
+
+        @Override
+        public void onLayout(LayoutTree.Layout layout) {
+            out.append(layout).append('\n');
+        }
+
+        @Override
+        public void onWidget(LayoutTree.Widget widget) {
+            out.append(widget).append('\n');
+        }
+
+        @Override
+        public void onPanelStart() {
+            out.append("panel\n");
+        }
+
+        @Override
+        public void onPanelEnd() {
+            out.append("end panel\n");
+        }
+
+        @Override
+        public void onWindowEnd() {
+            out.append("end window\n");
+        }
+    }
+
+    /**
+     * Events that <code>EventLog</code> writes for a valid file with this
+     * tree.
+     */
+    private static String events(LayoutTree.Window tree) {
+        EventLog log = new EventLog(new StringBuilder());
+        log.onWindowStart(tree.title(), tree.width(), tree.height());
+        log.onLayout(tree.layout());
+        events(log, tree.widgets());
+        log.onWindowEnd();
+        return log.out.toString();
+    }
+
+    private static void events(EventLog log, List<LayoutTree.Widget> widgets) {
+        for (LayoutTree.Widget widget : widgets) {
+            if (widget instanceof LayoutTree.Panel panel) {
+                log.onPanelStart();
+                log.onLayout(panel.layout());
+                events(log, panel.widgets());
+                log.onPanelEnd();
+            } else {
+                log.onWidget(widget);
+            }
+        }
+    }
+
+    private static LayoutTree.Window tree(String source) {
+        Main.Parser parser = new Main.Parser(new Main.Lexer(source.toCharArray(), 0, source.length()));
+        expect(parser.parseFile(), parser.errorMessage());
+        return parser.tree;
+    }
+
+    private static LayoutTree.Window tree(File file) {
+        Main.Parser parser = new Main.Parser(new Main.Lexer(file));
+        expect(parser.parseFile(), file + " does not parse");
+        return parser.tree;
+    }
+
+    /**
+     * Runs <code>Main</code> with the given arguments in a new JVM.
+     */
+    private static Run layout(String... args) throws IOException, InterruptedException {
+        return java(List.of(), args);
+    }
+
+    private static Run java(List<String> options, String... args) throws IOException, InterruptedException {
+        return java(options, ProcessBuilder.Redirect.PIPE, args);
+    }
+
+    private static Run java(List<String> options, ProcessBuilder.Redirect input, String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(options);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Main");
+        command.addAll(List.of(args));
+
+        Process process = new ProcessBuilder(command).redirectInput(input).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        return new Run(process.waitFor(), output.replace("\r\n", "\n"));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+  Project:  Project 1
+  Description:  Validates every layout file under a directory in parallel.
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+
+final class BatchValidator {
+
+    private BatchValidator() {
+    }
+
+    /**
+     * Outcome of validating one file.  <code>error</code> is the first
+     * error of a file that failed, and <code>diagnostics</code> every syntax
+     * error in it.  A file that could not be read has no diagnostics.
+     */
+    record Result(Path file, boolean passed, String error, List<Diagnostic> diagnostics) {
+    }
+
+    /**
+     * Lexes and parses every regular file under <code>directory</code> on a
+     * work-stealing pool.  Each file gets its own lexer and parser, so no
+     * state is shared between tasks.
+     *
+     * @param directory Directory to search recursively
+     * @param threads   Parallelism of the pool
+     * @return One result per file, sorted by path
+     * @throws IOException If the directory cannot be walked
+     */
+    static List<Result> validate(Path directory, int threads) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> files.parallelStream().map(BatchValidator::validateOrFail).toList()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch validation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Batch validation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Validates one file, and reports an exception the validator did not
+     * expect as a failure of that file, so the other results are kept.
+     */
+    private static Result validateOrFail(Path file) {
+        try {
+            return validateFile(file);
+        } catch (RuntimeException e) {
+            return new Result(file, false, "Internal error: " + e, List.of());
+        }
+    }
+
+    /**
+     * Validates a single file without creating any Swing objects.  No tree
+     * is built for a text layout, so memory does not grow with the file.  A
+     * binary layout passes if its tree can be read.
+     *
+     * @param file File to be validated
+     * @return Result for the file
+     */
+    static Result validateFile(Path file) {
+        if (LayoutBinary.isBinary(file.toFile())) {
+            try {
+                LayoutBinary.load(file.toFile());
+                return new Result(file, true, null, List.of());
+            } catch (IOException e) {
+                return new Result(file, false, "File could not be read!", List.of());
+            } catch (IllegalArgumentException e) {
+                return new Result(file, false, "Invalid binary layout: " + e.getMessage(), List.of());
+            }
+        }
+
+        Main.Parser parser = new Main.Parser(new Main.Lexer(file.toFile()));
+        parser.listener = LayoutListener.NONE;
+
+        if (parser.parseFile())
+            return new Result(file, true, null, List.of());
+
+        return new Result(file, false, parser.error, List.copyOf(parser.diagnostics));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+  Project:  Project 1
+  Description:  One syntax error found by the parser, with its position in
+                the source.
+ */
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+
+/**
+ * The message is only put together when <code>message()</code> is called,
+ * so a file with many errors costs one small record per error.
+ *
+ * @param code     Kind of error
+ * @param line     Line of the offending token, counting from 1
+ * @param column   Column of its first character, counting from 1
+ * @param start    Source offset of the offending token, or of the end of
+ *                 the input if there is no token left
+ * @param end      Source offset just past it
+ * @param context  Production being parsed
+ * @param expected Token types that would have been accepted; empty unless
+ *                 <code>code</code> is <code>UNEXPECTED_TOKEN</code>
+ * @param found    Type of the offending token
+ * @param lexeme   Lexeme of the offending token, or null at the end of the
+ *                 input
+ */
+record Diagnostic(Code code, int line, int column, int start, int end, String context,
+                  Set<Main.TokenType> expected, Main.TokenType found, String lexeme) {
+
+    /**
+     * Copies <code>expected</code>, since the parser passes its shared sets.
+     * The copy keeps the declaration order of the types for the message.
+     */
+    Diagnostic {
+        expected = expected.isEmpty() ? Set.of() : Collections.unmodifiableSet(EnumSet.copyOf(expected));
+    }
+
+    enum Code {
+        /**
+         * The token is not one the grammar allows here.
+         */
+        UNEXPECTED_TOKEN,
+        /**
+         * A number token is not a valid <code>int</code>.
+         */
+        INVALID_NUMBER,
+        /**
+         * A panel is nested deeper than the parser's limit.  Parsing stops
+         * at this error.
+         */
+        NESTING_TOO_DEEP,
+        /**
+         * A keyword, quotation or parenthesis is never closed.  Found by
+         * <code>LayoutPrescan</code> before the file is parsed.
+         */
+        UNCLOSED
+    }
+
+    /**
+     * E.g. <code>Widget: Button: "Semicolon" token not found (found End "End").</code>
+     */
+    String message() {
+        return switch (code) {
+            case UNEXPECTED_TOKEN -> {
+                StringBuilder names = new StringBuilder();
+                for (Main.TokenType type : expected) {
+                    if (names.length() > 0)
+                        names.append(" or ");
+                    names.append('"').append(displayName(type)).append('"');
+                }
+
+                String found = displayName(this.found);
+                if (lexeme != null)
+                    found += " \"" + lexeme + "\"";
+                yield String.format("%s: %s token not found (found %s).", context, names, found);
+            }
+            case INVALID_NUMBER -> String.format("%s: \"%s\" is not a valid number.", context, lexeme);
+            case NESTING_TOO_DEEP -> String.format("%s: Panels nested deeper than layout.maxDepth allows.", context);
+            case UNCLOSED -> String.format("%s: \"%s\" is never closed.", context, displayName(found));
+        };
+    }
+
+    /**
+     * Returns e.g. "Close_Parenthesis" for CLOSE_PARENTHESIS.
+     */
+    private static String displayName(Main.TokenType type) {
+        StringBuilder name = new StringBuilder(type.name().toLowerCase());
+        for (int x = 0; x < name.length(); x++) {
+            if (x == 0 || name.charAt(x - 1) == '_')
+                name.setCharAt(x, Character.toUpperCase(name.charAt(x)));
+        }
+        return name.toString();
+    }
+}
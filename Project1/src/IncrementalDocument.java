@@ -0,0 +1,257 @@
+/*
+  Project:  Project 1
+  Description:  Layout source held in memory for live editing.  After an
+                edit only the innermost panel around it is lexed and parsed
+                again, and the rest of the layout tree is reused.
+ */
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+final class IncrementalDocument {
+    private char[] text;
+    private int length;
+    private LayoutTree.Window tree;
+    private Segment root;
+    private String error;
+    private int[] changedPath;
+    private int fullParses;
+    private int incrementalParses;
+
+    /**
+     * Source span of one panel, or of the whole window for the root, with
+     * the spans of the panels nested directly inside it.
+     */
+    private static final class Segment {
+        int start;
+        int end;
+        LayoutTree.Panel panel;
+        int index;
+        Segment parent;
+        List<Segment> children = List.of();
+
+        Segment(int _start, int _end, LayoutTree.Panel _panel, int _index, Segment _parent) {
+            start = _start;
+            end = _end;
+            panel = _panel;
+            index = _index;
+            parent = _parent;
+        }
+    }
+
+    /**
+     * Parses the initial source in full.
+     *
+     * @param source Layout source
+     */
+    IncrementalDocument(String source) {
+        text = source.toCharArray();
+        length = text.length;
+        parseAll();
+    }
+
+    /**
+     * Current layout tree, or null if the source does not parse.
+     */
+    LayoutTree.Window tree() {
+        return tree;
+    }
+
+    /**
+     * Error message of the last failed parse, or null if the source parses.
+     */
+    String error() {
+        return error;
+    }
+
+    String text() {
+        return new String(text, 0, length);
+    }
+
+    /**
+     * Widget indices from the window down to the panel replaced by the last
+     * edit, or null if the last edit needed a full parse.
+     */
+    int[] changedPath() {
+        return changedPath;
+    }
+
+    int fullParses() {
+        return fullParses;
+    }
+
+    int incrementalParses() {
+        return incrementalParses;
+    }
+
+    /**
+     * Applies a text edit and brings the tree up to date.  The innermost
+     * panel that contains the edited range is reparsed first; if its new text
+     * is no longer a single panel the enclosing panels are tried in turn,
+     * and the whole document is parsed as a last resort.
+     *
+     * @param offset   Offset of the first character removed
+     * @param removed  Number of characters removed
+     * @param inserted Text inserted at <code>offset</code>
+     * @return true if the document parses after the edit
+     */
+    boolean edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length)
+            throw new IndexOutOfBoundsException("Edit outside the document: " + offset + "+" + removed);
+
+        Segment target = root == null ? null : innermost(root, offset, offset + removed);
+        splice(offset, removed, inserted);
+
+        int delta = inserted.length() - removed;
+        for (Segment segment = target; segment != null && segment != root; segment = segment.parent) {
+            if (reparse(segment, delta)) {
+                incrementalParses++;
+                return true;
+            }
+        }
+
+        return parseAll();
+    }
+
+    private void splice(int offset, int removed, String inserted) {
+        int newLength = length - removed + inserted.length();
+        if (newLength > text.length) {
+            char[] grown = new char[Math.max(newLength, text.length * 2)];
+            System.arraycopy(text, 0, grown, 0, offset);
+            System.arraycopy(text, offset + removed, grown, offset + inserted.length(), length - offset - removed);
+            text = grown;
+        } else {
+            System.arraycopy(text, offset + removed, text, offset + inserted.length(), length - offset - removed);
+        }
+
+        inserted.getChars(0, inserted.length(), text, offset);
+        length = newLength;
+    }
+
+    /**
+     * Returns the deepest segment whose span contains <code>[from, to)</code>.
+     */
+    private static Segment innermost(Segment segment, int from, int to) {
+        while (true) {
+            List<Segment> children = segment.children;
+            int low = 0;
+            int high = children.size() - 1;
+            Segment next = null;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                Segment child = children.get(middle);
+                if (child.end < from) {
+                    low = middle + 1;
+                } else if (child.start > from) {
+                    high = middle - 1;
+                } else {
+                    if (to <= child.end)
+                        next = child;
+                    break;
+                }
+            }
+
+            if (next == null)
+                return segment;
+            segment = next;
+        }
+    }
+
+    /**
+     * Reparses the text of one panel after an edit of <code>delta</code>
+     * characters inside it.  On success the new panel replaces the old one
+     * in its parent, every ancestor is rebuilt around its unchanged
+     * siblings, and the spans after the edit are moved.
+     *
+     * @return false, leaving the document untouched, if the text is no
+     * longer a single panel
+     */
+    private boolean reparse(Segment segment, int delta) {
+        Main.Parser parser = new Main.Parser(new Main.Lexer(text, segment.start, segment.end + delta));
+        parser.panelSpans = new IdentityHashMap<>();
+        if (!(parser.parseWidget() instanceof LayoutTree.Panel panel))
+            return false;
+
+        shift(root, segment.end, delta);
+        int[] span = parser.panelSpans.get(panel);
+        segment.start = span[0];
+        segment.end = span[1];
+        segment.panel = panel;
+        segment.children = segments(panel.widgets(), parser.panelSpans, segment);
+
+        int depth = 0;
+        for (Segment s = segment; s != root; s = s.parent)
+            depth++;
+        changedPath = new int[depth];
+
+        LayoutTree.Widget replacement = panel;
+        Segment child = segment;
+        for (Segment parent = segment.parent; ; parent = parent.parent) {
+            changedPath[--depth] = child.index;
+
+            List<LayoutTree.Widget> widgets = new ArrayList<>(parent == root ? tree.widgets() : parent.panel.widgets());
+            widgets.set(child.index, replacement);
+            if (parent == root) {
+                tree = new LayoutTree.Window(tree.title(), tree.width(), tree.height(), tree.layout(), widgets);
+                return true;
+            }
+
+            parent.panel = new LayoutTree.Panel(parent.panel.layout(), widgets);
+            replacement = parent.panel;
+            child = parent;
+        }
+    }
+
+    /**
+     * Moves every span boundary at or after <code>from</code> by
+     * <code>delta</code>.
+     */
+    private static void shift(Segment segment, int from, int delta) {
+        if (segment.end < from)
+            return;
+
+        if (segment.start >= from)
+            segment.start += delta;
+        segment.end += delta;
+        for (Segment child : segment.children)
+            shift(child, from, delta);
+    }
+
+    private boolean parseAll() {
+        fullParses++;
+        changedPath = null;
+
+        Main.Parser parser = new Main.Parser(new Main.Lexer(text, 0, length));
+        parser.panelSpans = new IdentityHashMap<>();
+        if (!parser.parseFile()) {
+            tree = null;
+            root = null;
+            error = parser.errorMessage();
+            return false;
+        }
+
+        tree = parser.tree;
+        error = null;
+        root = new Segment(0, length, null, 0, null);
+        root.children = segments(tree.widgets(), parser.panelSpans, root);
+        return true;
+    }
+
+    private static List<Segment> segments(List<LayoutTree.Widget> widgets, Map<LayoutTree.Panel, int[]> spans,
+                                          Segment parent) {
+        List<Segment> segments = new ArrayList<>();
+        for (int x = 0; x < widgets.size(); x++) {
+            if (widgets.get(x) instanceof LayoutTree.Panel panel) {
+                int[] span = spans.get(panel);
+                Segment segment = new Segment(span[0], span[1], panel, x, parent);
+                segment.children = segments(panel.widgets(), spans, segment);
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+}
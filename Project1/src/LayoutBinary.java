@@ -0,0 +1,479 @@
+/*
+  Project:  Project 1
+  Description:  Compact binary form of a layout tree, read in place from a
+                ByteBuffer without lexing or parsing.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A binary layout is a fixed header, a string table and the nodes of the
+ * tree in pre-order, all big-endian:
+ * <pre>
+ *   header   MAGIC, VERSION, width, height, title string, string count,
+ *            offset of the nodes                       (7 ints)
+ *   strings  count + 1 offsets into the UTF-8 bytes that follow, then the
+ *            bytes; equal strings are stored once
+ *   nodes    kind, value                                   (2 ints)
+ *            then for a window, panel or group the offset past its
+ *            subtree, and for a grid rows, columns, hGap, vGap
+ * </pre>
+ * The value is the child count of the window, a panel or a group, the
+ * string of a button, label or radio button, and the width of a text
+ * field.  Subtree offsets are relative to the first node, so a reader can
+ * step over a subtree without reading it.
+ * <p>
+ * A <code>LayoutBinary</code> is a view of such a buffer: nodes are
+ * addressed by their offset in it and strings are only decoded when asked
+ * for.  Only what the parser produces has a binary form, so a tree from
+ * <code>LayoutOptimizer</code> must be written before it is optimized.
+ * Nested panels are read and written with an explicit stack, so any depth
+ * the parser accepts has a binary form.
+ */
+final class LayoutBinary {
+    static final int MAGIC = 0x4C594231;
+    static final int VERSION = 1;
+    private static final int HEADER = 28;
+
+    static final int WINDOW = 0;
+    static final int PANEL = 1;
+    static final int BUTTON = 2;
+    static final int LABEL = 3;
+    static final int TEXT_FIELD = 4;
+    static final int GROUP = 5;
+    static final int RADIO = 6;
+    /**
+     * Added to the kind of a window or panel laid out in a grid.
+     */
+    private static final int GRID = 0x10;
+
+    /**
+     * A window or panel whose children are still being read.
+     */
+    private final class OpenPanel {
+        final int node;
+        final List<LayoutTree.Widget> widgets = new ArrayList<>();
+        int child;
+        int remaining;
+
+        OpenPanel(int _node) {
+            node = _node;
+            child = firstChild(_node);
+            remaining = value(_node);
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int stringData;
+    private final int nodes;
+
+    /**
+     * Checks the header and string table of a binary layout.  The nodes are
+     * checked as they are read.
+     *
+     * @param _buffer Binary layout from position 0; not modified
+     * @throws IllegalArgumentException If the buffer holds no binary layout
+     */
+    LayoutBinary(ByteBuffer _buffer) {
+        buffer = _buffer;
+        if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a binary layout");
+        if (buffer.getInt(4) != VERSION)
+            throw new IllegalArgumentException("Binary layout version " + buffer.getInt(4) + " is not supported");
+
+        stringCount = buffer.getInt(20);
+        nodes = buffer.getInt(24);
+        if (stringCount < 0 || stringCount >= (buffer.limit() - HEADER) / 4)
+            throw new IllegalArgumentException("Binary layout is truncated");
+
+        stringData = HEADER + 4 * (stringCount + 1);
+        if (stringData + buffer.getInt(stringData - 4) != nodes || nodes > buffer.limit() - 12)
+            throw new IllegalArgumentException("Binary layout is truncated");
+    }
+
+    /**
+     * True if the file starts with <code>MAGIC</code>.  Text layouts start
+     * with "Window", so the first bytes tell the formats apart.
+     *
+     * @param file File to test
+     * @return false for a text layout or a file that cannot be read
+     */
+    static boolean isBinary(File file) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] magic = in.readNBytes(4);
+            return magic.length == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Maps a binary layout file read-only and reads its tree.
+     *
+     * @param file Binary layout file
+     * @return Layout tree of the file
+     * @throws IOException              If the file cannot be read
+     * @throws IllegalArgumentException If the file holds no valid binary layout
+     */
+    static LayoutTree.Window load(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new LayoutBinary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).tree();
+        }
+    }
+
+    int width() {
+        return buffer.getInt(8);
+    }
+
+    int height() {
+        return buffer.getInt(12);
+    }
+
+    String title() {
+        return string(buffer.getInt(16));
+    }
+
+    /**
+     * Offset of the window node.
+     */
+    int root() {
+        return nodes;
+    }
+
+    /**
+     * One of <code>WINDOW</code>, <code>PANEL</code>, ... <code>RADIO</code>.
+     */
+    int kind(int node) {
+        return buffer.getInt(node) & ~GRID;
+    }
+
+    /**
+     * Child count, string index or width, depending on the kind.
+     */
+    int value(int node) {
+        return buffer.getInt(node + 4);
+    }
+
+    boolean isGrid(int node) {
+        return (buffer.getInt(node) & GRID) != 0;
+    }
+
+    /**
+     * True for a button, label, text field or radio button, which have no
+     * children and no subtree offset.
+     */
+    private boolean isLeaf(int node) {
+        int kind = kind(node);
+        return kind != WINDOW && kind != PANEL && kind != GROUP;
+    }
+
+    int rows(int node) {
+        return buffer.getInt(node + 12);
+    }
+
+    int columns(int node) {
+        return buffer.getInt(node + 16);
+    }
+
+    int hGap(int node) {
+        return buffer.getInt(node + 20);
+    }
+
+    int vGap(int node) {
+        return buffer.getInt(node + 24);
+    }
+
+    /**
+     * Offset of the first child of a window, panel or group.
+     */
+    int firstChild(int node) {
+        return node + (isGrid(node) ? 28 : 12);
+    }
+
+    /**
+     * Offset just past the subtree of a node, which is its next sibling if
+     * it has one.
+     */
+    int next(int node) {
+        if (isLeaf(node))
+            return node + 8;
+
+        return nodes + buffer.getInt(node + 8);
+    }
+
+    /**
+     * Decodes a string of the string table.
+     */
+    String string(int index) {
+        if (index < 0 || index >= stringCount)
+            throw new IllegalArgumentException("String " + index + " is not in the table");
+
+        int start = stringData + buffer.getInt(HEADER + 4 * index);
+        int end = stringData + buffer.getInt(HEADER + 4 * index + 4);
+        if (start < stringData || end < start || end > nodes)
+            throw new IllegalArgumentException("String " + index + " lies outside the table");
+        if (buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the whole tree.  Each string is decoded once and shared by every
+     * node that uses it.
+     *
+     * @return Layout tree
+     * @throws IllegalArgumentException If a node is malformed or runs past
+     *                                  the end of the buffer
+     */
+    LayoutTree.Window tree() {
+        String[] strings = new String[stringCount];
+        int root = root();
+        try {
+            if (kind(root) != WINDOW)
+                throw new IllegalArgumentException("Binary layout does not start with a window");
+
+            return new LayoutTree.Window(title(), width(), height(), layout(root), widgets(root, strings));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Binary layout is truncated", e);
+        }
+    }
+
+    /**
+     * Reads the widgets of the window at <code>root</code>, going down into
+     * each panel as it is met and back up when its last child is read.
+     */
+    private List<LayoutTree.Widget> widgets(int root, String[] strings) {
+        ArrayDeque<OpenPanel> open = new ArrayDeque<>();
+        OpenPanel current = new OpenPanel(root);
+        while (true) {
+            if (current.remaining <= 0) {
+                if (open.isEmpty())
+                    return current.widgets;
+
+                OpenPanel parent = open.pop();
+                parent.widgets.add(new LayoutTree.Panel(layout(current.node), current.widgets));
+                parent.child = checkedNext(current.node, parent.node);
+                current = parent;
+                continue;
+            }
+
+            int node = current.child;
+            current.remaining--;
+            if (kind(node) == PANEL) {
+                open.push(current);
+                current = new OpenPanel(node);
+                continue;
+            }
+
+            current.widgets.add(switch (kind(node)) {
+                case BUTTON -> new LayoutTree.Button(string(node, strings));
+                case LABEL -> new LayoutTree.Label(string(node, strings));
+                case TEXT_FIELD -> new LayoutTree.Textfield(value(node));
+                case GROUP -> {
+                    List<LayoutTree.Radio> radios = new ArrayList<>();
+                    int radio = firstChild(node);
+                    for (int y = value(node); y > 0; y--) {
+                        if (kind(radio) != RADIO)
+                            throw new IllegalArgumentException("Group at " + node + " holds a widget");
+                        radios.add(new LayoutTree.Radio(string(radio, strings)));
+                        radio = checkedNext(radio, node);
+                    }
+                    yield new LayoutTree.Group(radios);
+                }
+                default -> throw new IllegalArgumentException("Unknown node kind " + kind(node) + " at " + node);
+            });
+            current.child = checkedNext(node, current.node);
+        }
+    }
+
+    /**
+     * Next sibling of <code>node</code>, which must lie past it and inside
+     * its parent, so a corrupt buffer cannot make the reader loop.
+     */
+    private int checkedNext(int node, int parent) {
+        int next = next(node);
+        if (next <= node || next > next(parent))
+            throw new IllegalArgumentException("Node at " + node + " overlaps its siblings");
+        return next;
+    }
+
+    private String string(int node, String[] strings) {
+        int index = value(node);
+        if (index < 0 || index >= strings.length)
+            throw new IllegalArgumentException("String " + index + " is not in the table");
+        if (strings[index] == null)
+            strings[index] = string(index);
+        return strings[index];
+    }
+
+    private LayoutTree.Layout layout(int node) {
+        if (!isGrid(node))
+            return LayoutTree.Layout.FLOW;
+
+        return LayoutTree.Layout.grid(rows(node), columns(node), hGap(node), vGap(node));
+    }
+
+    /**
+     * Encodes a parsed layout tree.
+     *
+     * @param tree Tree from the parser
+     * @return Binary layout
+     * @throws IllegalArgumentException If the tree holds a node the parser
+     *                                  does not make
+     */
+    static byte[] write(LayoutTree.Window tree) {
+        return new Writer().window(tree);
+    }
+
+    /**
+     * Collects the strings while the nodes are written, since the node
+     * array can only be placed once the string table is complete.
+     */
+    private static final class Writer {
+        /**
+         * A window or panel whose subtree offset is filled in once its
+         * widgets have all been written.
+         */
+        private record OpenNode(int start, Iterator<LayoutTree.Widget> widgets) {
+        }
+
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private ByteBuffer nodes = ByteBuffer.allocate(1024);
+
+        byte[] window(LayoutTree.Window tree) {
+            int title = string(tree.title());
+            container(WINDOW, tree.layout(), tree.widgets());
+
+            int length = 0;
+            for (byte[] string : strings)
+                length += string.length;
+            int stringData = HEADER + 4 * (strings.size() + 1);
+            ByteBuffer out = ByteBuffer.allocate(stringData + length + nodes.position());
+            out.putInt(MAGIC).putInt(VERSION).putInt(tree.width()).putInt(tree.height()).putInt(title)
+                    .putInt(strings.size()).putInt(stringData + length);
+
+            int offset = 0;
+            for (byte[] string : strings) {
+                out.putInt(offset);
+                offset += string.length;
+            }
+            out.putInt(offset);
+            for (byte[] string : strings)
+                out.put(string);
+            out.put(nodes.array(), 0, nodes.position());
+            return out.array();
+        }
+
+        private void widget(LayoutTree.Widget widget) {
+            if (widget instanceof LayoutTree.Button button) {
+                leaf(BUTTON, string(button.text()));
+            } else if (widget instanceof LayoutTree.Label label) {
+                leaf(LABEL, string(label.text()));
+            } else if (widget instanceof LayoutTree.Textfield textField) {
+                leaf(TEXT_FIELD, textField.width());
+            } else if (widget instanceof LayoutTree.Group group) {
+                int start = node(GROUP, group.radios().size());
+                for (LayoutTree.Radio radio : group.radios())
+                    leaf(RADIO, string(radio.text()));
+                nodes.putInt(start + 8, nodes.position());
+            } else {
+                throw new IllegalArgumentException("No binary form for " + widget);
+            }
+        }
+
+        /**
+         * Writes a window or panel and everything inside it.  Nested panels
+         * go on a stack until their widgets are written.
+         */
+        private void container(int kind, LayoutTree.Layout layout, List<LayoutTree.Widget> widgets) {
+            ArrayDeque<OpenNode> open = new ArrayDeque<>();
+            OpenNode current = new OpenNode(containerNode(kind, layout, widgets.size()), widgets.iterator());
+            while (true) {
+                if (!current.widgets().hasNext()) {
+                    nodes.putInt(current.start() + 8, nodes.position());
+                    if (open.isEmpty())
+                        return;
+
+                    current = open.pop();
+                    continue;
+                }
+
+                LayoutTree.Widget widget = current.widgets().next();
+                if (widget instanceof LayoutTree.Panel panel) {
+                    open.push(current);
+                    current = new OpenNode(containerNode(PANEL, panel.layout(), panel.widgets().size()),
+                            panel.widgets().iterator());
+                } else {
+                    widget(widget);
+                }
+            }
+        }
+
+        /**
+         * Writes the start of a window or panel and its grid, if it has one.
+         *
+         * @return Offset of the node
+         */
+        private int containerNode(int kind, LayoutTree.Layout layout, int children) {
+            boolean grid = layout.type() == Main.TokenType.GRID;
+            int start = node(grid ? kind | GRID : kind, children);
+            if (grid) {
+                reserve(16);
+                nodes.putInt(layout.rows()).putInt(layout.columns()).putInt(layout.hGap()).putInt(layout.vGap());
+            }
+            return start;
+        }
+
+        private void leaf(int kind, int value) {
+            reserve(8);
+            nodes.putInt(kind).putInt(value);
+        }
+
+        /**
+         * Writes the start of a window, panel or group, with its subtree
+         * offset still to be filled in.
+         *
+         * @return Offset of the node
+         */
+        private int node(int kind, int value) {
+            reserve(12);
+            int start = nodes.position();
+            nodes.putInt(kind).putInt(value).putInt(0);
+            return start;
+        }
+
+        private void reserve(int bytes) {
+            if (nodes.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(nodes.capacity() * 2, nodes.position() + bytes));
+                larger.put(nodes.array(), 0, nodes.position());
+                nodes = larger;
+            }
+        }
+
+        private int string(String string) {
+            return indices.computeIfAbsent(string, unused -> {
+                strings.add(string.getBytes(StandardCharsets.UTF_8));
+                return strings.size() - 1;
+            });
+        }
+    }
+}
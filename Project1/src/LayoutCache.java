@@ -0,0 +1,145 @@
+/*
+  Project:  Project 1
+  Description:  Cache of parsed layout trees keyed by a hash of the source
+                file, held in memory and in a directory on disk.
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Trees are stored on disk as binary layouts, so a disk hit maps the file
+ * and reads the tree in place.
+ */
+final class LayoutCache {
+    private final Path directory;
+    private final Map<String, LayoutTree.Window> memory;
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param _directory Directory holding one file per cached tree, created
+     *                   if it does not exist
+     * @param _capacity  Number of trees kept in memory; the least recently
+     *                   used one is evicted beyond that
+     */
+    LayoutCache(Path _directory, int _capacity) {
+        directory = _directory;
+        memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LayoutTree.Window> eldest) {
+                if (size() <= _capacity)
+                    return false;
+
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Cache key of a source file: the SHA-256 of its bytes, in hex.
+     *
+     * @param source Contents of the file
+     * @return Key for <code>get()</code> and <code>put()</code>
+     */
+    static String key(byte[] source) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(source));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is always available", e);
+        }
+    }
+
+    /**
+     * Returns the cached tree for a key, looking in memory first and then on
+     * disk.  A tree read from disk is kept in memory from then on.
+     *
+     * @param key Key of the source file
+     * @return The tree, or null on a miss
+     */
+    synchronized LayoutTree.Window get(String key) {
+        LayoutTree.Window tree = memory.get(key);
+        if (tree != null) {
+            hits++;
+            return tree;
+        }
+
+        tree = read(directory.resolve(key));
+        if (tree == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        diskHits++;
+        memory.put(key, tree);
+        return tree;
+    }
+
+    /**
+     * Stores a freshly parsed tree in memory and on disk.  Failing to write
+     * the disk copy only costs a parse on the next start, so it is ignored.
+     *
+     * @param key  Key of the source file
+     * @param tree Tree parsed from that file
+     */
+    synchronized void put(String key, LayoutTree.Window tree) {
+        memory.put(key, tree);
+
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, LayoutBinary.write(tree));
+            Files.move(temporary, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (Main.debug)
+                System.out.println("Cache entry " + key + " not written: " + e);
+        }
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Number of hits that had to read the tree from disk.
+     */
+    synchronized long diskHits() {
+        return diskHits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Reads a cache file.  A missing, truncated or foreign file is treated
+     * as a miss.
+     */
+    private static LayoutTree.Window read(Path file) {
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try {
+            return LayoutBinary.load(file.toFile());
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+  Project:  Project 1
+  Description:  Compiles a parsed layout tree to the Java source of a class
+                that builds the same window without lexing or parsing.
+ */
+
+import javax.lang.model.SourceVersion;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * The generated class has a <code>build()</code> method that creates the
+ * same components, layouts and borders as <code>SwingBuilder.build()</code>
+ * does for the tree, with plain constructor calls the JIT can inline.  It
+ * belongs with the application classes, in the default package, since a
+ * large panel still needs <code>LazyPanel</code> and the
+ * <code>LayoutTree</code> nodes of its cells.
+ * <p>
+ * A class file limits each method to 64 KB of bytecode and each class to
+ * 65,535 constants, which a big layout exceeds.  So statements are spread
+ * over static methods of at most <code>CHUNK</code> statements, and the
+ * methods over nested classes of at most <code>PART</code> statements.
+ * Every method takes the instance <code>b</code> that holds the radio
+ * button group being filled.  Nested panels get a method each, so very
+ * deep nesting is limited by the stack, as it is for
+ * <code>SwingBuilder.build()</code>.
+ * <p>
+ * A subtree the parser shared between several places gets one method,
+ * called for each copy, so the class grows with the distinct subtrees.
+ */
+final class LayoutCompiler {
+    private static final int CHUNK = 200;
+    private static final int PART = 10_000;
+    /**
+     * Simple names of the library classes the generated source refers to.
+     * A class of the same name would shadow them.
+     */
+    private static final Set<String> USED_NAMES = Set.of(
+            "JFrame", "JPanel", "JButton", "JLabel", "JTextField", "JRadioButton", "JComponent", "ButtonGroup",
+            "BorderFactory", "Border", "Color", "Dimension", "GridLayout", "FlowLayout", "Container", "ArrayList",
+            "List", "String");
+
+    private final String className;
+    private final List<StringBuilder> parts = new ArrayList<>();
+    private int partStatements;
+    /**
+     * Border fields by the key <code>SwingBuilder</code> uses for the same
+     * border.
+     */
+    private final Map<String, String> frames = new LinkedHashMap<>();
+    /**
+     * Call made for each panel, cell list and radio list already emitted,
+     * by identity.
+     */
+    private final Map<Object, String> methods = new IdentityHashMap<>();
+    private int methodCount;
+
+    private LayoutCompiler(String _className) {
+        className = _className;
+    }
+
+    /**
+     * Generates a class whose <code>build()</code> returns a frame, not yet
+     * visible, equal component for component to
+     * <code>SwingBuilder.build(tree)</code>.
+     *
+     * @param tree      Layout tree to compile
+     * @param className Simple name of the generated class
+     * @param source    Name of the layout file, for the header comment
+     * @return Java source of the class
+     */
+    static String compile(LayoutTree.Window tree, String className, String source) {
+        return new LayoutCompiler(className).window(tree, source);
+    }
+
+    /**
+     * Tells whether the generated class can be called <code>name</code>.
+     * The name must be a Java identifier that is not one of the names the
+     * generated source uses: a library class it refers to, a nested part
+     * <code>P1</code>, <code>P2</code>, ..., or a class of the application,
+     * which the generated class joins in the default package.  A class
+     * generated before may be generated again.
+     *
+     * @param name Simple class name
+     * @return true if the name can be used
+     */
+    static boolean isClassName(String name) {
+        if (!SourceVersion.isIdentifier(name) || SourceVersion.isKeyword(name) || USED_NAMES.contains(name)
+                || name.matches("P[0-9]+"))
+            return false;
+
+        Class<?> existing;
+        try {
+            existing = Class.forName(name, false, LayoutCompiler.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return true;
+        } catch (LinkageError e) {
+            return false;
+        }
+
+        try {
+            Method build = existing.getDeclaredMethod("build");
+            return Modifier.isStatic(build.getModifiers())
+                    && build.getReturnType().getName().equals("javax.swing.JFrame");
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private String window(LayoutTree.Window tree, String source) {
+        List<String> body = new ArrayList<>();
+        body.add(className + " b = new " + className + "();");
+        body.add("JFrame window = new JFrame(" + literal(tree.title()) + ");");
+        List<String> widgets = null;
+        if (SwingBuilder.isLazy(tree.widgets())) {
+            body.add("window.setContentPane(LazyPanel.create(" + node(tree.layout()) + ", "
+                    + cells(tree.widgets()) + "));");
+        } else {
+            body.add("window.setLayout(" + manager(tree.layout()) + ");");
+            body.add("addWidgets(b, window.getContentPane());");
+            widgets = chunks("Container c", components(tree.widgets()));
+        }
+        body.add("window.setMinimumSize(new Dimension(" + tree.width() + ", " + tree.height() + "));");
+        body.add("return window;");
+
+        StringBuilder out = new StringBuilder();
+        out.append("// Generated by LayoutCompiler from ").append(source.replaceAll("\\s", " "))
+                .append(".  Do not edit.\n\n");
+        out.append("import javax.swing.*;\nimport javax.swing.border.Border;\nimport java.awt.*;\n");
+        out.append("import java.util.ArrayList;\nimport java.util.List;\n\n\n");
+        out.append("public final class ").append(className).append(" {\n");
+        out.append("    private static final Border LINE = BorderFactory.createLineBorder(Color.black);\n");
+        out.append("    private static final Border FLOW_FRAME = BorderFactory.createCompoundBorder(LINE,\n");
+        out.append("            BorderFactory.createEmptyBorder(5, 5, 5, 5));\n");
+        for (Map.Entry<String, String> frame : frames.entrySet())
+            out.append("    private static final Border ").append(frame.getValue()).append(" = ")
+                    .append(border(frame.getKey())).append(";\n");
+        out.append("\n    private ButtonGroup group;\n\n");
+        out.append("    private ").append(className).append("() {\n    }\n\n");
+        out.append("    /**\n     * Creates the window.  The frame is not made visible.\n     */\n");
+        out.append("    public static JFrame build() {\n");
+        for (String statement : body)
+            out.append("        ").append(statement).append('\n');
+        out.append("    }\n");
+        if (widgets != null) {
+            out.append("\n    private static void addWidgets(").append(className).append(" b, Container c) {\n");
+            for (String statement : widgets)
+                out.append("        ").append(statement).append('\n');
+            out.append("    }\n");
+        }
+        out.append("""
+
+                    private static <T extends JComponent> T panel(T panel) {
+                        panel.setSize(500, 500);
+                        panel.setBorder(LINE);
+                        return panel;
+                    }
+
+                    private static <T extends JComponent> T border(T component, Border border) {
+                        component.setBorder(border);
+                        return component;
+                    }
+
+                    private static void radio(%s b, Container c, String text) {
+                        JRadioButton button = new JRadioButton(text);
+                        c.add(button);
+                        b.group.add(button);
+                    }
+                """.formatted(className));
+        for (int x = 0; x < parts.size(); x++) {
+            out.append("\n    private static final class P").append(x + 1).append(" {");
+            out.append(parts.get(x));
+            out.append("    }\n");
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+
+    /**
+     * Statements adding the components of <code>widgets</code> to the
+     * container <code>c</code>.
+     */
+    private List<String> components(List<LayoutTree.Widget> widgets) {
+        List<String> statements = new ArrayList<>();
+        for (LayoutTree.Widget widget : widgets) {
+            if (widget instanceof LayoutTree.Group group) {
+                statements.add("b.group = new ButtonGroup();");
+                for (LayoutTree.Radio radio : group.radios())
+                    statements.add("radio(b, c, " + literal(radio.text()) + ");");
+            } else {
+                statements.add("c.add(" + component(widget) + ");");
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Expression creating the component of a widget other than a group, as
+     * <code>SwingBuilder.buildWidget()</code> does.
+     */
+    private String component(LayoutTree.Widget widget) {
+        if (widget instanceof LayoutTree.Button button) {
+            return "new JButton(" + literal(button.text()) + ")";
+        } else if (widget instanceof LayoutTree.Label label) {
+            return "new JLabel(" + literal(label.text()) + ")";
+        } else if (widget instanceof LayoutTree.Textfield textField) {
+            return "new JTextField(" + textField.width() + ")";
+        } else if (widget instanceof LayoutTree.Panel panel) {
+            String call = methods.get(panel);
+            if (call == null) {
+                if (SwingBuilder.isLazy(panel.widgets()))
+                    return "panel(LazyPanel.create(" + node(panel.layout()) + ", " + cells(panel.widgets()) + "))";
+
+                String start = "JPanel c = panel(new JPanel(" + manager(panel.layout()) + "));";
+                call = method("JPanel", "panel", start, "Container c", components(panel.widgets()));
+                methods.put(panel, call);
+            }
+            return call;
+        } else if (widget instanceof LayoutTree.Framed framed) {
+            LayoutTree.Widget content = framed.widget();
+            StringBuilder key = new StringBuilder(content instanceof LayoutTree.Label ? "-" : "L");
+            for (LayoutTree.Layout frame : framed.frames())
+                key.append(frame.type() == Main.TokenType.FLOW ? 'F' : 'G');
+
+            String field = frames.computeIfAbsent(key.toString(),
+                    unused -> "FRAME_" + key.toString().replace('-', 'N'));
+            return "border(" + component(content) + ", " + field + ")";
+        }
+
+        throw new IllegalArgumentException("No component for " + widget);
+    }
+
+    /**
+     * Expression for the border <code>SwingBuilder.frameBorder()</code>
+     * makes for a key: the border of the content, '-' for none or 'L' for
+     * <code>LINE</code>, then a frame per removed panel, outermost first.
+     */
+    private static String border(String key) {
+        String border = key.charAt(0) == '-' ? null : "LINE";
+        for (int x = key.length() - 1; x > 0; x--) {
+            String frame = key.charAt(x) == 'F' ? "FLOW_FRAME" : "LINE";
+            border = border == null ? frame : "BorderFactory.createCompoundBorder(" + frame + ", " + border + ")";
+        }
+        return border;
+    }
+
+    /**
+     * Expression for the list of tree nodes of a lazy grid's cells.
+     */
+    private String cells(List<LayoutTree.Widget> widgets) {
+        String call = methods.get(widgets);
+        if (call == null) {
+            List<String> statements = new ArrayList<>();
+            for (LayoutTree.Widget widget : widgets)
+                statements.add("c.add(" + node(widget) + ");");
+
+            call = method("List<LayoutTree.Widget>", "cells", "List<LayoutTree.Widget> c = new ArrayList<>();",
+                    "List<LayoutTree.Widget> c", statements);
+            methods.put(widgets, call);
+        }
+        return call;
+    }
+
+    /**
+     * Expression recreating a tree node.
+     */
+    private String node(LayoutTree.Widget widget) {
+        if (widget instanceof LayoutTree.Button button) {
+            return "new LayoutTree.Button(" + literal(button.text()) + ")";
+        } else if (widget instanceof LayoutTree.Label label) {
+            return "new LayoutTree.Label(" + literal(label.text()) + ")";
+        } else if (widget instanceof LayoutTree.Textfield textField) {
+            return "new LayoutTree.Textfield(" + textField.width() + ")";
+        } else if (widget instanceof LayoutTree.Panel panel) {
+            return "new LayoutTree.Panel(" + node(panel.layout()) + ", " + cells(panel.widgets()) + ")";
+        } else if (widget instanceof LayoutTree.Group group) {
+            String call = methods.get(group.radios());
+            if (call == null) {
+                List<String> statements = new ArrayList<>();
+                for (LayoutTree.Radio radio : group.radios())
+                    statements.add("c.add(new LayoutTree.Radio(" + literal(radio.text()) + "));");
+
+                call = method("List<LayoutTree.Radio>", "radios", "List<LayoutTree.Radio> c = new ArrayList<>();",
+                        "List<LayoutTree.Radio> c", statements);
+                methods.put(group.radios(), call);
+            }
+            return "new LayoutTree.Group(" + call + ")";
+        } else if (widget instanceof LayoutTree.Framed framed) {
+            StringBuilder frames = new StringBuilder();
+            for (LayoutTree.Layout frame : framed.frames())
+                frames.append(frames.length() > 0 ? ", " : "").append(node(frame));
+            return "new LayoutTree.Framed(List.of(" + frames + "), " + node(framed.widget()) + ")";
+        }
+
+        throw new IllegalArgumentException("No node for " + widget);
+    }
+
+    private static String node(LayoutTree.Layout layout) {
+        if (layout.type() == Main.TokenType.GRID)
+            return "LayoutTree.Layout.grid(" + layout.rows() + ", " + layout.columns() + ", " + layout.hGap()
+                    + ", " + layout.vGap() + ")";
+
+        return "LayoutTree.Layout.FLOW";
+    }
+
+    private static String manager(LayoutTree.Layout layout) {
+        if (layout.type() == Main.TokenType.GRID)
+            return "new GridLayout(" + layout.rows() + ", " + layout.columns() + ", " + layout.hGap() + ", "
+                    + layout.vGap() + ")";
+
+        return "new FlowLayout()";
+    }
+
+    /**
+     * Adds a method that declares <code>c</code>, runs statements on it and
+     * returns it.
+     *
+     * @param type       Type of <code>c</code>
+     * @param prefix     Name of the method, to which a number is added
+     * @param start      Statement declaring <code>c</code>
+     * @param parameter  Declaration of <code>c</code> as a parameter of the
+     *                   methods that take over statements from this one
+     * @param statements Statements on <code>c</code>
+     * @return Expression calling the method
+     */
+    private String method(String type, String prefix, String start, String parameter, List<String> statements) {
+        List<String> lines = new ArrayList<>();
+        lines.add(start);
+        lines.addAll(chunks(parameter, statements));
+        lines.add("return c;");
+        return emit(type, prefix + ++methodCount, className + " b", lines) + "(b)";
+    }
+
+    /**
+     * Moves statements into methods taking <code>parameter</code>, at most
+     * <code>CHUNK</code> each, and returns the calls to make in their place.
+     */
+    private List<String> chunks(String parameter, List<String> statements) {
+        while (statements.size() > CHUNK) {
+            List<String> calls = new ArrayList<>();
+            for (int x = 0; x < statements.size(); x += CHUNK) {
+                List<String> chunk = statements.subList(x, Math.min(x + CHUNK, statements.size()));
+                calls.add(emit("void", "add" + ++methodCount, className + " b, " + parameter, chunk) + "(b, c);");
+            }
+            statements = calls;
+        }
+        return statements;
+    }
+
+    /**
+     * Writes a static method into the current nested class, starting a new
+     * one once it holds <code>PART</code> statements.
+     *
+     * @return Name of the method, qualified by its class
+     */
+    private String emit(String type, String name, String parameters, List<String> lines) {
+        if (parts.isEmpty() || partStatements + lines.size() > PART) {
+            parts.add(new StringBuilder());
+            partStatements = 0;
+        }
+        partStatements += lines.size();
+
+        StringBuilder part = parts.get(parts.size() - 1);
+        part.append("\n        static ").append(type).append(' ').append(name).append('(').append(parameters)
+                .append(") {\n");
+        for (String line : lines)
+            part.append("            ").append(line).append('\n');
+        part.append("        }\n");
+        return "P" + parts.size() + "." + name;
+    }
+
+    /**
+     * Java string literal for <code>text</code>.  Characters outside
+     * printable ASCII are escaped, line breaks with an escape the compiler
+     * does not translate before lexing.
+     */
+    private static String literal(String text) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int x = 0; x < text.length(); x++) {
+            char c = text.charAt(x);
+            if (c == '"' || c == '\\')
+                literal.append('\\').append(c);
+            else if (c == '\n')
+                literal.append("\\n");
+            else if (c == '\r')
+                literal.append("\\r");
+            else if (c < ' ' || c > '~')
+                literal.append(String.format("\\u%04x", (int) c));
+            else
+                literal.append(c);
+        }
+        return literal.append('"').toString();
+    }
+}
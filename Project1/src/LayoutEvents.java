@@ -0,0 +1,89 @@
+/*
+  Project:  Project 1
+  Description:  Flight Recorder events for each phase of loading a layout.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+/**
+ * Recorded with e.g.
+ * <code>java -XX:StartFlightRecording=filename=layout.jfr,settings=profile Main file.txt</code>
+ * and shown under "Layout" in Mission Control, or printed with
+ * <code>jfr print --events layout.Parse layout.jfr</code>.  An event that
+ * no recording has enabled is never committed, and its few fields are
+ * filled in only after <code>shouldCommit()</code>.
+ */
+final class LayoutEvents {
+
+    private LayoutEvents() {
+    }
+
+    @Name("layout.Parse")
+    @Label("Parse")
+    @Category("Layout")
+    @Description("Lexing and parsing of one layout file")
+    static final class Parse extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Lex Time")
+        @Description("Part of the duration spent in the lexer; only measured with -Dlayout.metrics=true")
+        @Timespan
+        long lexTime;
+
+        @Label("Syntax Errors")
+        int errors;
+
+        @Label("Skipped Tokens")
+        @Description("Tokens thrown away while recovering from syntax errors")
+        long skippedTokens;
+
+        @Label("Nesting")
+        @Description("Deepest panel nesting")
+        int nesting;
+
+        @Label("Shared Widgets")
+        @Description("Widgets that reuse an equal subtree parsed before instead of a copy of their own")
+        int sharedWidgets;
+
+        @Label("Rejected by Prescan")
+        @Description("The file was found malformed before it was lexed, with a single error")
+        boolean prescanRejected;
+    }
+
+    @Name("layout.Optimize")
+    @Label("Optimize")
+    @Category("Layout")
+    @Description("Removal of panels that do not change the rendered layout")
+    static final class Optimize extends Event {
+        @Label("Panels Removed")
+        int removedPanels;
+    }
+
+    @Name("layout.Build")
+    @Label("Build")
+    @Category("Layout")
+    @Description("Creation of Swing components, for a whole window or one batch or scroll of it")
+    static final class Build extends Event {
+        @Label("Components")
+        int components;
+
+        @Label("Batch")
+        @Description("True for one step of a window built in batches, or cells created by scrolling a lazy grid")
+        boolean batch;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+  Project:  Project 1
+  Description:  Receives the structure of a layout file from the parser as
+                it is recognized, without a layout tree being built.
+ */
+
+/**
+ * Set as <code>Parser.listener</code> before <code>parseFile()</code>.  The
+ * events of a valid file are:
+ * <pre>
+ *   onWindowStart onLayout (widget)* onWindowEnd
+ *   widget: onWidget | onPanelStart onLayout (widget)* onPanelEnd
+ * </pre>
+ * The parser then holds only the current token and the nesting depth, so a
+ * listener that keeps nothing parses a file of any size in fixed memory.
+ * <p>
+ * Events are sent for what the parser recovers from a file with errors,
+ * and may stop without closing the open containers when it gives up, so
+ * the result of <code>parseFile()</code> says whether they describe a valid
+ * layout.  Every method does nothing unless overridden.
+ */
+interface LayoutListener {
+    /**
+     * Ignores every event, for callers that only need the diagnostics.
+     */
+    LayoutListener NONE = new LayoutListener() {
+    };
+
+    default void onWindowStart(String title, int width, int height) {
+    }
+
+    /**
+     * Layout of the window or panel just started.  A container whose
+     * header has an error gets a flow layout.
+     */
+    default void onLayout(LayoutTree.Layout layout) {
+    }
+
+    /**
+     * A button, label, text field or group.  A group comes with all its
+     * radio buttons; panels are sent as their own events instead.
+     */
+    default void onWidget(LayoutTree.Widget widget) {
+    }
+
+    default void onPanelStart() {
+    }
+
+    default void onPanelEnd() {
+    }
+
+    default void onWindowEnd() {
+    }
+}
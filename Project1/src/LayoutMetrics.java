@@ -0,0 +1,166 @@
+/*
+  Project:  Project 1
+  Description:  Counters for lexing, parsing and building layouts, exposed
+                as a JMX MBean.
+ */
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Counting is off unless the JVM is started with
+ * <code>-Dlayout.metrics=true</code>.  Every caller tests
+ * <code>ENABLED</code>, a static final, so when it is false the JIT drops
+ * the counting and the timing around it.  When it is true the counters are
+ * registered as the MBean <code>layout:type=LayoutMetrics</code>, which
+ * JConsole or Mission Control can watch.
+ * <p>
+ * The JFR events in <code>LayoutEvents</code> do not depend on this flag;
+ * they cost next to nothing unless a recording enables them.
+ */
+public final class LayoutMetrics implements LayoutMetricsMBean {
+    static final boolean ENABLED = Boolean.getBoolean("layout.metrics");
+    private static final LayoutMetrics METRICS = new LayoutMetrics();
+
+    private final LongAdder filesParsed = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder tokensLexed = new LongAdder();
+    private final LongAdder lexTime = new LongAdder();
+    private final LongAdder parseTime = new LongAdder();
+    private final LongAdder syntaxErrors = new LongAdder();
+    private final LongAdder skippedTokens = new LongAdder();
+    private final LongAccumulator maxNesting = new LongAccumulator(Math::max, 0);
+    private final LongAdder panelsRemoved = new LongAdder();
+    private final LongAdder componentsCreated = new LongAdder();
+    private final LongAdder buildTime = new LongAdder();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(METRICS,
+                        new ObjectName("layout:type=LayoutMetrics"));
+            } catch (JMException e) {
+                System.out.println("Warning: Layout metrics could not be registered: " + e.getMessage());
+            }
+        }
+    }
+
+    private LayoutMetrics() {
+    }
+
+    /**
+     * Records one call of <code>Parser.parseFile()</code>.
+     *
+     * @param bytes    Size of the input
+     * @param tokens   Tokens lexed
+     * @param lexNanos Time spent in the lexer
+     * @param nanos    Time of the whole parse
+     * @param errors   Syntax errors found
+     * @param skipped  Tokens skipped to recover from them
+     * @param nesting  Deepest panel nesting
+     */
+    static void parsed(long bytes, long tokens, long lexNanos, long nanos, int errors, long skipped, int nesting) {
+        METRICS.filesParsed.increment();
+        METRICS.bytesRead.add(bytes);
+        METRICS.tokensLexed.add(tokens);
+        METRICS.lexTime.add(lexNanos);
+        METRICS.parseTime.add(nanos);
+        METRICS.syntaxErrors.add(errors);
+        METRICS.skippedTokens.add(skipped);
+        METRICS.maxNesting.accumulate(nesting);
+    }
+
+    static void optimized(int removed) {
+        METRICS.panelsRemoved.add(removed);
+    }
+
+    /**
+     * Records components created by the Swing builder or a lazy grid, and
+     * the time it took.
+     */
+    static void built(int components, long nanos) {
+        METRICS.componentsCreated.add(components);
+        METRICS.buildTime.add(nanos);
+    }
+
+    /**
+     * One line per counter, for printing at the end of a command-line run.
+     */
+    static String summary() {
+        return String.format("Files parsed:       %d\nBytes read:         %d\nTokens lexed:       %d\n"
+                        + "Lex time:           %.3f ms\nParse time:         %.3f ms\nSyntax errors:      %d\n"
+                        + "Skipped tokens:     %d\nMax nesting:        %d\nPanels removed:     %d\n"
+                        + "Components created: %d\nBuild time:         %.3f ms",
+                METRICS.getFilesParsed(), METRICS.getBytesRead(), METRICS.getTokensLexed(),
+                METRICS.getLexTime() / 1e6, METRICS.getParseTime() / 1e6, METRICS.getSyntaxErrors(),
+                METRICS.getSkippedTokens(), METRICS.getMaxNesting(), METRICS.getPanelsRemoved(),
+                METRICS.getComponentsCreated(), METRICS.getBuildTime() / 1e6);
+    }
+
+    @Override
+    public long getFilesParsed() {
+        return filesParsed.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getTokensLexed() {
+        return tokensLexed.sum();
+    }
+
+    @Override
+    public long getLexTime() {
+        return lexTime.sum();
+    }
+
+    @Override
+    public long getParseTime() {
+        return parseTime.sum();
+    }
+
+    @Override
+    public long getSyntaxErrors() {
+        return syntaxErrors.sum();
+    }
+
+    @Override
+    public long getSkippedTokens() {
+        return skippedTokens.sum();
+    }
+
+    @Override
+    public long getMaxNesting() {
+        return maxNesting.get();
+    }
+
+    @Override
+    public long getPanelsRemoved() {
+        return panelsRemoved.sum();
+    }
+
+    @Override
+    public long getComponentsCreated() {
+        return componentsCreated.sum();
+    }
+
+    @Override
+    public long getBuildTime() {
+        return buildTime.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{filesParsed, bytesRead, tokensLexed, lexTime, parseTime,
+                syntaxErrors, skippedTokens, panelsRemoved, componentsCreated, buildTime})
+            adder.reset();
+        maxNesting.reset();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+  Project:  Project 1
+  Description:  Management interface of the layout counters.
+ */
+
+/**
+ * JMX requires a standard MBean interface to be public and named after its
+ * class.  Times are in nanoseconds; every value counts from the start of
+ * the JVM or the last <code>reset()</code>.
+ */
+public interface LayoutMetricsMBean {
+    long getFilesParsed();
+
+    long getBytesRead();
+
+    long getTokensLexed();
+
+    long getLexTime();
+
+    /**
+     * Time spent in <code>Parser.parseFile()</code>, including the lexing it
+     * pulls in.
+     */
+    long getParseTime();
+
+    long getSyntaxErrors();
+
+    /**
+     * Tokens thrown away while recovering from syntax errors.
+     */
+    long getSkippedTokens();
+
+    /**
+     * Deepest panel nesting of any file parsed.
+     */
+    long getMaxNesting();
+
+    long getPanelsRemoved();
+
+    long getComponentsCreated();
+
+    long getBuildTime();
+
+    void reset();
+}
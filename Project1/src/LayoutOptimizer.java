@@ -0,0 +1,126 @@
+/*
+  Project:  Project 1
+  Description:  Removes panels that change nothing on screen from a parsed
+                layout tree before it is built.
+ */
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A panel holding a single label or panel is replaced by a
+ * <code>LayoutTree.Framed</code> node, which draws the panel's line border
+ * on the child instead of wrapping it in another <code>JPanel</code>.  This
+ * is only done where the child ends up with the same bounds:
+ * <ul>
+ *     <li>a 1x1 grid panel, which stretches its child over its whole
+ *     interior, and</li>
+ *     <li>a flow panel inside a flow container, which gets its preferred
+ *     size and so holds its child at the 5 pixel flow gaps.</li>
+ * </ul>
+ * Labels and panels are the only children that paint the same with the
+ * extra border, since they are transparent or share the panel background.
+ * <p>
+ * A panel the parser shared between several places is optimized once for
+ * each kind of container it appears in, and the result is shared in turn.
+ */
+final class LayoutOptimizer {
+    private int removedPanels;
+    /**
+     * Result for each panel seen, in a flow container and in a grid.
+     */
+    private final Map<LayoutTree.Panel, Optimized[]> seen = new IdentityHashMap<>();
+
+    /**
+     * Optimized form of a panel and the number of panels removed from it.
+     */
+    private record Optimized(LayoutTree.Widget widget, int removedPanels) {
+    }
+
+    /**
+     * Number of panels removed by <code>optimize()</code> so far.
+     */
+    int removedPanels() {
+        return removedPanels;
+    }
+
+    /**
+     * Returns a tree that renders the same as <code>tree</code> with fewer
+     * panels.  Unchanged subtrees are shared with the original.
+     *
+     * @param tree Parsed layout tree
+     * @return Optimized tree
+     */
+    LayoutTree.Window optimize(LayoutTree.Window tree) {
+        List<LayoutTree.Widget> widgets = widgets(tree.widgets(), tree.layout());
+        if (widgets == tree.widgets())
+            return tree;
+
+        return new LayoutTree.Window(tree.title(), tree.width(), tree.height(), tree.layout(), widgets);
+    }
+
+    /**
+     * @param container Layout of the container holding the widgets
+     */
+    private List<LayoutTree.Widget> widgets(List<LayoutTree.Widget> widgets, LayoutTree.Layout container) {
+        List<LayoutTree.Widget> optimized = new ArrayList<>(widgets.size());
+        boolean changed = false;
+        for (LayoutTree.Widget widget : widgets) {
+            LayoutTree.Widget result = widget(widget, container);
+            changed |= result != widget;
+            optimized.add(result);
+        }
+        return changed ? optimized : widgets;
+    }
+
+    private LayoutTree.Widget widget(LayoutTree.Widget widget, LayoutTree.Layout container) {
+        if (!(widget instanceof LayoutTree.Panel panel))
+            return widget;
+
+        Optimized[] results = seen.computeIfAbsent(panel, unused -> new Optimized[2]);
+        int flow = container.type() == Main.TokenType.FLOW ? 1 : 0;
+        if (results[flow] == null) {
+            int before = removedPanels;
+            LayoutTree.Widget result = optimize(panel, container);
+            results[flow] = new Optimized(result, removedPanels - before);
+            return result;
+        }
+
+        removedPanels += results[flow].removedPanels();
+        return results[flow].widget();
+    }
+
+    private LayoutTree.Widget optimize(LayoutTree.Panel panel, LayoutTree.Layout container) {
+        List<LayoutTree.Widget> widgets = widgets(panel.widgets(), panel.layout());
+        if (widgets.size() == 1 && keepsBounds(panel.layout(), container)) {
+            LayoutTree.Widget child = widgets.get(0);
+            if (child instanceof LayoutTree.Framed framed) {
+                removedPanels++;
+                List<LayoutTree.Layout> frames = new ArrayList<>();
+                frames.add(panel.layout());
+                frames.addAll(framed.frames());
+                return new LayoutTree.Framed(frames, framed.widget());
+            } else if (child instanceof LayoutTree.Label || child instanceof LayoutTree.Panel) {
+                removedPanels++;
+                return new LayoutTree.Framed(List.of(panel.layout()), child);
+            }
+        }
+
+        return widgets == panel.widgets() ? panel : new LayoutTree.Panel(panel.layout(), widgets);
+    }
+
+    /**
+     * Tells whether the only child of a panel with <code>layout</code>,
+     * placed in a container with <code>container</code> layout, has the
+     * bounds of the panel's interior, less the flow gaps for a flow panel.
+     */
+    private static boolean keepsBounds(LayoutTree.Layout layout, LayoutTree.Layout container) {
+        if (layout.type() == Main.TokenType.GRID)
+            return layout.rows() == 1 || (layout.rows() == 0 && layout.columns() == 1);
+
+        return container.type() == Main.TokenType.FLOW;
+    }
+}
@@ -0,0 +1,440 @@
+/*
+  Project:  Project 1
+  Description:  Single pass over the raw bytes of a layout file that finds
+                structural errors before the file is lexed and parsed.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+
+/**
+ * Follows the lexer's quotations, parentheses and comment lines byte by
+ * byte, and matches each "Panel" and "Group" keyword, and the leading
+ * "Window", with its "End" and the ";" or "." after it.  Any file the
+ * parser accepts passes, so a file that fails is rejected without lexing
+ * it.  The scan stops at the "." that ends the window, as the parser does.
+ * <p>
+ * Quotations, parentheses and comment lines are skipped eight bytes at a
+ * time: each byte of a <code>long</code> is compared with the few that can
+ * end them (SWAR).  Words and punctuation between them are classified one
+ * byte at a time, with the lexer's own character classes; only two and
+ * three byte UTF-8 sequences can be word characters, since the lexer sees
+ * anything longer as a surrogate pair.
+ */
+final class LayoutPrescan {
+    /**
+     * Files at least this large are scanned before they are parsed.  A
+     * smaller file parses quickly, and every error in it is reported rather
+     * than the first structural one.
+     */
+    static final long MIN_SIZE = Long.getLong("layout.prescanSize", 1L << 20);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long QUOTATIONS = ONES * '"';
+    private static final long CLOSE_PARENTHESES = ONES * ')';
+    private static final long SLASHES = ONES * '/';
+    private static final long NEWLINES = ONES * '\n';
+    private static final long RETURNS = ONES * '\r';
+
+    private final ByteBuffer bytes;
+    private final int size;
+    /**
+     * Offsets of the "Window", "Panel" and "Group" keywords not yet closed.
+     */
+    private int[] open = new int[64];
+    private int depth;
+
+    private LayoutPrescan(ByteBuffer _bytes) {
+        bytes = _bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        size = bytes.limit();
+    }
+
+    /**
+     * Scans a file of at most 2 GB.
+     *
+     * @param file Layout file
+     * @return The first structural error, or null if there is none or the
+     *         file cannot be scanned, which is left to the lexer to report
+     */
+    static Diagnostic check(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                return null;
+
+            return check(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Scans <code>bytes[0, limit)</code> as UTF-8.  Positions in the result
+     * are in characters, as the lexer counts them.
+     *
+     * @param bytes Contents of a layout file
+     * @return The first structural error, or null if there is none
+     */
+    static Diagnostic check(ByteBuffer bytes) {
+        return new LayoutPrescan(bytes).scan();
+    }
+
+    private Diagnostic scan() {
+        int x = nextToken(0);
+        if (x == size || !is(x, wordEnd(x), "Window"))
+            return unexpected("GUI", EnumSet.of(Main.TokenType.WINDOW), x, 0);
+        open[depth++] = x;
+        x += "Window".length();
+
+        while (true) {
+            x = nextToken(x);
+            if (x == size)
+                return unclosed(open[depth - 1]);
+
+            int b = bytes.get(x);
+            if (b == '"') {
+                int end = skipPast(x + 1, QUOTATIONS);
+                if (end < 0)
+                    return unclosed(x);
+                x = end;
+            } else if (b == '(') {
+                int end = skipPast(x + 1, CLOSE_PARENTHESES);
+                if (end < 0)
+                    return unclosed(x);
+                x = end;
+            } else if (b >= 0 && Main.Lexer.classOf((char) b) == Main.Lexer.PUNCTUATION) {
+                x++;
+            } else {
+                int end = wordEnd(x);
+                if (is(x, end, "Panel") || is(x, end, "Group")) {
+                    if (depth == open.length)
+                        open = Arrays.copyOf(open, depth * 2);
+                    open[depth++] = x;
+                } else if (is(x, end, "Window")) {
+                    EnumSet<Main.TokenType> expected = EnumSet.copyOf(Main.Parser.FIRST_WIDGET);
+                    expected.add(Main.TokenType.END);
+                    return unexpected("Widget", expected, x, end);
+                } else if (is(x, end, "End")) {
+                    int opener = open[--depth];
+                    int next = nextToken(end);
+                    byte terminator = (byte) (depth == 0 ? '.' : ';');
+                    if (next == size || bytes.get(next) != terminator) {
+                        String context = switch (bytes.get(opener)) {
+                            case 'P' -> "Widget: Panel";
+                            case 'G' -> "Widget: Group";
+                            default -> "GUI";
+                        };
+                        Main.TokenType type = depth == 0 ? Main.TokenType.PERIOD : Main.TokenType.SEMICOLON;
+                        return unexpected(context, EnumSet.of(type), next, end);
+                    }
+                    if (depth == 0)
+                        return null;
+                    end = next + 1;
+                }
+                x = end;
+            }
+        }
+    }
+
+    /**
+     * Offset of the first word or punctuation character at or after
+     * <code>x</code> outside comment lines, or <code>size</code>.
+     */
+    private int nextToken(int x) {
+        while (x < size) {
+            int b = bytes.get(x);
+            if (b >= 0) {
+                if (b == '/' && isLineStart(x)) {
+                    x = skipLine(x);
+                    continue;
+                }
+                if (Main.Lexer.classOf((char) b) != Main.Lexer.SKIP)
+                    return x;
+                x++;
+            } else {
+                int character = decode(x);
+                if (character >= 0 && Main.Lexer.classOf((char) character) == Main.Lexer.WORD)
+                    return x;
+                x += character < 0 ? 1 : length(character);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Offset just past the word that starts at <code>x</code>.
+     */
+    private int wordEnd(int x) {
+        while (x < size) {
+            int b = bytes.get(x);
+            if (b >= 0) {
+                if (Main.Lexer.classOf((char) b) != Main.Lexer.WORD)
+                    break;
+                x++;
+            } else {
+                int character = decode(x);
+                if (character < 0 || Main.Lexer.classOf((char) character) != Main.Lexer.WORD)
+                    break;
+                x += length(character);
+            }
+        }
+        return x;
+    }
+
+    /**
+     * True if the word <code>bytes[start, end)</code> is <code>keyword</code>.
+     */
+    private boolean is(int start, int end, String keyword) {
+        if (end - start != keyword.length())
+            return false;
+        for (int x = 0; x < keyword.length(); x++) {
+            if (bytes.get(start + x) != keyword.charAt(x))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Skips a quotation or parenthesis: finds the byte in every lane of
+     * <code>closing</code> that ends it, passing over comment lines.
+     *
+     * @return Offset just past the closing byte, or -1 if the input ends
+     *         first
+     */
+    private int skipPast(int x, long closing) {
+        byte close = (byte) closing;
+        while (true) {
+            x = find(x, closing, SLASHES);
+            if (x == size)
+                return -1;
+            if (bytes.get(x) == close)
+                return x + 1;
+            x = isLineStart(x) ? skipLine(x) : x + 1;
+        }
+    }
+
+    /**
+     * Offset of the first byte at or after <code>x</code> that is in a lane
+     * of <code>first</code> or <code>second</code>, or <code>size</code>.
+     */
+    private int find(int x, long first, long second) {
+        for (; x + 8 <= size; x += 8) {
+            long word = bytes.getLong(x);
+            long found = zeroBytes(word ^ first) | zeroBytes(word ^ second);
+            if (found != 0)
+                return x + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        for (; x < size; x++) {
+            if (bytes.get(x) == (byte) first || bytes.get(x) == (byte) second)
+                return x;
+        }
+        return size;
+    }
+
+    /**
+     * Offset just past the line separator that ends the line holding
+     * <code>x</code>, or <code>size</code>.  '\n' and '\r' are found eight
+     * bytes at a time along with any byte above 0x7F, which may start one
+     * of the other separators.
+     */
+    private int skipLine(int x) {
+        while (true) {
+            for (; x + 8 <= size; x += 8) {
+                long word = bytes.getLong(x);
+                long found = zeroBytes(word ^ NEWLINES) | zeroBytes(word ^ RETURNS) | (word & HIGHS);
+                if (found != 0) {
+                    x += Long.numberOfTrailingZeros(found) >>> 3;
+                    break;
+                }
+            }
+            for (; x < size; x++) {
+                int b = bytes.get(x);
+                if (b == '\n' || b == '\r' || b < 0)
+                    break;
+            }
+            if (x == size)
+                return size;
+
+            int length = separatorLength(x);
+            if (length > 0)
+                return x + length;
+            x++;
+        }
+    }
+
+    /**
+     * Sets the high bit of each byte of <code>word</code> that is zero.  A
+     * byte above a zero byte may be set as well, but the lowest set byte is
+     * always a zero byte.
+     */
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+
+    /**
+     * True if <code>x</code> starts a line: it is the first byte or follows
+     * a line separator.
+     */
+    private boolean isLineStart(int x) {
+        if (x == 0)
+            return true;
+
+        int b = bytes.get(x - 1) & 0xFF;
+        return b == '\n' || b == '\r'
+                || b == 0x85 && x >= 2 && separatorLength(x - 2) == 2
+                || (b == 0xA8 || b == 0xA9) && x >= 3 && separatorLength(x - 3) == 3;
+    }
+
+    /**
+     * Length of the line separator at <code>x</code>: '\n', '\r', U+0085,
+     * U+2028 or U+2029.  Zero if there is none.
+     */
+    private int separatorLength(int x) {
+        int b = bytes.get(x) & 0xFF;
+        if (b == '\n' || b == '\r')
+            return 1;
+        if (b == 0xC2 && x + 1 < size && (bytes.get(x + 1) & 0xFF) == 0x85)
+            return 2;
+        if (b == 0xE2 && x + 2 < size && (bytes.get(x + 1) & 0xFF) == 0x80
+                && ((bytes.get(x + 2) & 0xFF) == 0xA8 || (bytes.get(x + 2) & 0xFF) == 0xA9))
+            return 3;
+        return 0;
+    }
+
+    /**
+     * Character of the two or three byte UTF-8 sequence at <code>x</code>,
+     * or -1 if there is none there.  The decoder replaces a malformed
+     * sequence with U+FFFD, and a four byte one becomes two surrogates,
+     * and the lexer skips all of those alike.
+     */
+    private int decode(int x) {
+        int b = bytes.get(x) & 0xFF;
+        if (b >= 0xC2 && b <= 0xDF && x + 1 < size) {
+            int second = bytes.get(x + 1) & 0xFF;
+            if ((second & 0xC0) == 0x80)
+                return (b & 0x1F) << 6 | second & 0x3F;
+        } else if (b >= 0xE0 && b <= 0xEF && x + 2 < size) {
+            int second = bytes.get(x + 1) & 0xFF;
+            int third = bytes.get(x + 2) & 0xFF;
+            int low = b == 0xE0 ? 0xA0 : 0x80;
+            int high = b == 0xED ? 0x9F : 0xBF;
+            if (second >= low && second <= high && (third & 0xC0) == 0x80)
+                return (b & 0x0F) << 12 | (second & 0x3F) << 6 | third & 0x3F;
+        }
+        return -1;
+    }
+
+    private static int length(int character) {
+        return character < 0x800 ? 2 : 3;
+    }
+
+    /**
+     * Error for an opening keyword, quotation or parenthesis at
+     * <code>x</code> that is never closed.
+     */
+    private Diagnostic unclosed(int x) {
+        int end = bytes.get(x) == '"' || bytes.get(x) == '(' ? x + 1 : wordEnd(x);
+        String lexeme = text(x, end);
+        int[] position = locate(x);
+        return new Diagnostic(Diagnostic.Code.UNCLOSED, position[0], position[1], position[2],
+                position[2] + lexeme.length(), "Structure", EnumSet.noneOf(Main.TokenType.class),
+                Main.Lexer.typeOf(lexeme), lexeme);
+    }
+
+    /**
+     * Error for the token at <code>x</code>, worded as the parser words it.
+     * At the end of the input the position is just past the last token,
+     * which ends at <code>previousEnd</code>.
+     */
+    private Diagnostic unexpected(String context, EnumSet<Main.TokenType> expected, int x, int previousEnd) {
+        if (x == size) {
+            int[] position = locate(previousEnd);
+            return new Diagnostic(Diagnostic.Code.UNEXPECTED_TOKEN, position[0], position[1], position[2],
+                    position[2], context, expected, Main.TokenType.END_OF_FILE, null);
+        }
+
+        int end = Main.Lexer.classOf((char) (bytes.get(x) & 0xFF)) == Main.Lexer.PUNCTUATION ? x + 1 : wordEnd(x);
+        String lexeme = text(x, end);
+        int[] position = locate(x);
+        return new Diagnostic(Diagnostic.Code.UNEXPECTED_TOKEN, position[0], position[1], position[2],
+                position[2] + lexeme.length(), context, expected, Main.Lexer.typeOf(lexeme), lexeme);
+    }
+
+    private String text(int start, int end) {
+        byte[] text = new byte[end - start];
+        bytes.get(start, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Line, column and character offset of byte <code>x</code>, as the
+     * lexer counts them: lines end at the same separators, with a "\r\n"
+     * pair ending one line, and characters are what the bytes decode to.
+     * Only the line holding <code>x</code> is decoded, and the bytes before
+     * it only if they are not all ASCII.
+     */
+    private int[] locate(int x) {
+        int line = 1;
+        int lineStart = 0;
+        while (lineStart < x) {
+            int next = skipLine(lineStart);
+            if (next > x || next == size && !isLineStart(size))
+                break;
+
+            if (!(next - 1 == lineStart && bytes.get(lineStart) == '\n' && lineStart > 0
+                    && bytes.get(lineStart - 1) == '\r'))
+                line++;
+            lineStart = next;
+        }
+
+        int column = characters(lineStart, x) + 1;
+        int before = isAscii(lineStart) ? lineStart : characters(0, lineStart);
+        return new int[] {line, column, before + column - 1};
+    }
+
+    /**
+     * True if no byte before <code>end</code> is above 0x7F.
+     */
+    private boolean isAscii(int end) {
+        int x = 0;
+        for (; x + 8 <= end; x += 8) {
+            if ((bytes.getLong(x) & HIGHS) != 0)
+                return false;
+        }
+        for (; x < end; x++) {
+            if (bytes.get(x) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Number of characters <code>bytes[start, end)</code> decodes to.
+     */
+    private int characters(int start, int end) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer input = bytes.slice(start, end - start);
+        CharBuffer output = CharBuffer.allocate(1 << 13);
+        int count = 0;
+        while (decoder.decode(input, output, true).isOverflow()) {
+            count += output.position();
+            output.clear();
+        }
+        decoder.flush(output);
+        return count + output.position();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+  Project:  Project 1
+  Description:  Live preview of a layout file that is being edited.  Each
+                change to the file is applied to an incremental document,
+                and only the panel around it is rebuilt in the window.
+ */
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+
+/**
+ * Polls the file on a thread of its own.  A change is taken as a single
+ * edit, from the first to the last character that differ, so typing in one
+ * panel reparses only that panel.  Reading and parsing stay off the Event
+ * Dispatch Thread; only the swap of the changed components is posted to
+ * it.  A change the document cannot place inside a panel rebuilds the
+ * window.  While the file does not parse, the last valid layout stays on
+ * screen.
+ */
+final class LayoutPreview {
+    private static final int POLL_MILLIS = 100;
+
+    private final File file;
+    private IncrementalDocument document;
+    private long modified;
+    private long size;
+    /**
+     * Only used on the Event Dispatch Thread.
+     */
+    private JFrame window;
+
+    /**
+     * @param _file Layout source file to watch
+     */
+    private LayoutPreview(File _file) {
+        file = _file;
+    }
+
+    /**
+     * Shows the layout of <code>file</code> and keeps it up to date until
+     * the window is closed.
+     *
+     * @param file Layout source file
+     */
+    static void watch(File file) {
+        LayoutPreview preview = new LayoutPreview(file);
+        Thread poller = new Thread(() -> {
+            try {
+                while (true) {
+                    preview.poll();
+                    Thread.sleep(POLL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "layout-preview");
+        poller.start();
+    }
+
+    /**
+     * Reads the file if its time stamp or size changed, applies the
+     * difference, and posts the new tree to the Event Dispatch Thread.
+     * Each posted tree follows from the one before it, because a failed
+     * parse is not posted and the next edit after it parses in full.
+     */
+    private void poll() {
+        if (file.lastModified() == modified && file.length() == size)
+            return;
+
+        modified = file.lastModified();
+        size = file.length();
+        String source;
+        try {
+            source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.out.println("Error: File could not be read!");
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (document == null) {
+            document = new IncrementalDocument(source);
+        } else if (!edit(document, source)) {
+            return;
+        }
+
+        LayoutTree.Window tree = document.tree();
+        if (tree == null) {
+            System.out.println(document.error());
+            return;
+        }
+
+        int[] path = document.changedPath();
+        System.out.printf("%s: parsed in %.1f ms (%d incremental, %d full parses)\n", file,
+                (System.nanoTime() - start) / 1e6, document.incrementalParses(), document.fullParses());
+        SwingUtilities.invokeLater(() -> update(tree, path));
+    }
+
+    /**
+     * Applies the text between the common prefix and suffix of the old and
+     * new source as one edit.
+     *
+     * @return false if the source did not change
+     */
+    static boolean edit(IncrementalDocument document, String source) {
+        String old = document.text();
+        int limit = Math.min(old.length(), source.length());
+        int prefix = 0;
+        while (prefix < limit && old.charAt(prefix) == source.charAt(prefix))
+            prefix++;
+        if (prefix == old.length() && prefix == source.length())
+            return false;
+
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && old.charAt(old.length() - 1 - suffix) == source.charAt(source.length() - 1 - suffix))
+            suffix++;
+
+        document.edit(prefix, old.length() - prefix - suffix, source.substring(prefix, source.length() - suffix));
+        return true;
+    }
+
+    /**
+     * Swaps the changed panel, or builds the whole window again in the
+     * place of the old one if <code>path</code> is null.
+     */
+    private void update(LayoutTree.Window tree, int[] path) {
+        if (window != null && path != null) {
+            SwingBuilder.replacePanel(window, tree, path);
+            return;
+        }
+
+        JFrame built = SwingBuilder.build(tree);
+        if (window == null) {
+            window = built;
+            window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            window.setLocationRelativeTo(null);
+            window.setVisible(true);
+            return;
+        }
+
+        window.setTitle(built.getTitle());
+        window.setMinimumSize(built.getMinimumSize());
+        window.setContentPane(built.getContentPane());
+        built.dispose();
+        window.revalidate();
+        window.repaint();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+  Project:  Project 1
+  Description:  Writes a layout tree back out as layout source.
+ */
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * The output parses back to an equal tree.  Strings are written as they
+ * are: the parser has already joined their words with single spaces and
+ * dropped what is not a word or punctuation, and no string it makes holds
+ * a quotation mark.  Nested panels are kept on an explicit stack, so any
+ * depth the parser accepts can be printed.
+ */
+final class LayoutPrinter {
+    /**
+     * Panels nested deeper than this are indented no further, so the
+     * output stays linear in the size of the tree.
+     */
+    private static final int MAX_INDENT = 32;
+
+    private final StringBuilder out = new StringBuilder();
+
+    private LayoutPrinter() {
+    }
+
+    /**
+     * @param tree Tree from the parser, not optimized
+     * @return Layout source, indented two spaces per panel
+     * @throws IllegalArgumentException If the tree holds a node the parser
+     *                                  does not make
+     */
+    static String print(LayoutTree.Window tree) {
+        LayoutPrinter printer = new LayoutPrinter();
+        printer.out.append("Window ").append(quote(tree.title())).append(" (").append(tree.width()).append(", ")
+                .append(tree.height()).append(") ");
+        printer.layout(tree.layout());
+        printer.widgets(tree.widgets());
+        return printer.out.append("End.\n").toString();
+    }
+
+    private void widgets(List<LayoutTree.Widget> widgets) {
+        ArrayDeque<Iterator<LayoutTree.Widget>> open = new ArrayDeque<>();
+        Iterator<LayoutTree.Widget> current = widgets.iterator();
+        while (true) {
+            if (!current.hasNext()) {
+                if (open.isEmpty())
+                    return;
+
+                current = open.pop();
+                indent(open.size() + 1).append("End;\n");
+                continue;
+            }
+
+            LayoutTree.Widget widget = current.next();
+            int depth = open.size() + 1;
+            indent(depth);
+            if (widget instanceof LayoutTree.Button button) {
+                out.append("Button ").append(quote(button.text())).append(";\n");
+            } else if (widget instanceof LayoutTree.Label label) {
+                out.append("Label ").append(quote(label.text())).append(";\n");
+            } else if (widget instanceof LayoutTree.Textfield textField) {
+                out.append("Textfield ").append(textField.width()).append(";\n");
+            } else if (widget instanceof LayoutTree.Panel panel) {
+                out.append("Panel ");
+                layout(panel.layout());
+                open.push(current);
+                current = panel.widgets().iterator();
+            } else if (widget instanceof LayoutTree.Group group) {
+                out.append("Group\n");
+                for (LayoutTree.Radio radio : group.radios())
+                    indent(depth + 1).append("Radio ").append(quote(radio.text())).append(";\n");
+                indent(depth).append("End;\n");
+            } else {
+                throw new IllegalArgumentException("No source for " + widget);
+            }
+        }
+    }
+
+    private StringBuilder indent(int depth) {
+        for (int x = Math.min(depth, MAX_INDENT); x > 0; x--)
+            out.append("  ");
+        return out;
+    }
+
+    private void layout(LayoutTree.Layout layout) {
+        if (layout.type() == Main.TokenType.GRID)
+            out.append(String.format("Layout Grid(%d, %d, %d, %d):\n", layout.rows(), layout.columns(),
+                    layout.hGap(), layout.vGap()));
+        else
+            out.append("Layout Flow:\n");
+    }
+
+    private static String quote(String text) {
+        return '"' + text + '"';
+    }
+}
@@ -0,0 +1,585 @@
+/*
+  Project:  Project 1
+  Description:  Long-running validation service that reads requests as JSON
+                lines from standard input or a local socket.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+
+
+/**
+ * Each request is one line holding a JSON object with an
+ * <code>id</code>, echoed back as given, and either the layout
+ * <code>source</code> or the <code>path</code> of a text or binary layout
+ * file inside the served directory:
+ * <pre>
+ *   {"id": 1, "source": "Window \"A\" (100, 100) Layout Flow: End."}
+ *   {"id": 2, "path": "tests/test-nested"}
+ * </pre>
+ * Each gets one line back, in the order the requests finish:
+ * <pre>
+ *   {"id": 1, "ok": true, "title": "A", "width": 100, "height": 100, "components": 0}
+ *   {"id": 2, "ok": false, "error": "...", "diagnostics": [{"line": 3, "column": 5, "message": "..."}]}
+ * </pre>
+ * A line that is not such an object gets an error, with a null
+ * <code>id</code> unless the id could be read.  A path is resolved against
+ * the served directory, following links, and one that ends up outside it
+ * is refused.
+ * <p>
+ * Requests that arrive together are handed to the pool in batches, and
+ * each batch is answered with a single write.  A task borrows a
+ * <code>Worker</code> whose lexer and buffers are reused from request to
+ * request.  A text layout is summarized as it is parsed, without a tree
+ * being built, so a warm server allocates little.
+ */
+final class LayoutServer {
+    /**
+     * Most requests, and characters of requests, in one batch.  A batch is
+     * also cut short when no further request is waiting to be read.
+     */
+    private static final int BATCH_REQUESTS = 64;
+    private static final int BATCH_CHARS = 1 << 16;
+
+    private final ForkJoinPool pool;
+    private final int threads;
+    private final Path root;
+    private final ConcurrentLinkedQueue<Worker> workers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Lexer and buffers used by one batch at a time.  The buffers only
+     * grow, to the largest file or source seen.
+     */
+    private static final class Worker {
+        final Main.Lexer lexer = new Main.Lexer(new char[0], 0, 0);
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final StringBuilder out = new StringBuilder();
+        final Summary summary = new Summary();
+        ByteBuffer bytes = ByteBuffer.allocate(1 << 16);
+        char[] chars = new char[1 << 16];
+        int length;
+
+        void reserve(int chars) {
+            if (this.chars.length < chars)
+                this.chars = new char[Math.max(chars, this.chars.length * 2)];
+        }
+    }
+
+    /**
+     * Takes what a response reports from the parser's events.
+     */
+    private static final class Summary implements LayoutListener {
+        String title;
+        int width;
+        int height;
+        int components;
+
+        @Override
+        public void onWindowStart(String _title, int _width, int _height) {
+            title = _title;
+            width = _width;
+            height = _height;
+            components = 0;
+        }
+
+        @Override
+        public void onWidget(LayoutTree.Widget widget) {
+            components += widget instanceof LayoutTree.Group group ? group.radios().size() : 1;
+        }
+
+        @Override
+        public void onPanelStart() {
+            components++;
+        }
+    }
+
+    /**
+     * @param _threads Parallelism of the pool
+     * @param _root    Directory that request paths are resolved against
+     * @throws IOException If the directory does not exist or is not one
+     */
+    LayoutServer(int _threads, Path _root) throws IOException {
+        threads = _threads;
+        root = _root.toRealPath();
+        if (!Files.isDirectory(root))
+            throw new NotDirectoryException(root.toString());
+        pool = new ForkJoinPool(_threads);
+    }
+
+    /**
+     * Answers requests from standard input on standard output until the
+     * input ends.
+     */
+    void serveStandardStreams() throws IOException {
+        serve(System.in, System.out);
+        pool.shutdown();
+    }
+
+    /**
+     * Answers requests on every connection to <code>port</code> on the
+     * loopback address, each on a thread of its own.  Does not return.
+     *
+     * @param port TCP port to listen on
+     * @throws IOException If the port cannot be bound
+     */
+    void serveSocket(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.printf("Listening on %s\n", server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> {
+                    try (socket) {
+                        serve(socket.getInputStream(), socket.getOutputStream());
+                    } catch (IOException e) {
+                        if (Main.debug)
+                            System.out.println("Connection closed: " + e);
+                    }
+                }, "layout-connection");
+                connection.setDaemon(true);
+                connection.start();
+            }
+        }
+    }
+
+    /**
+     * Reads requests until the input ends and returns once all have been
+     * answered.  At most a few batches per thread are in flight; beyond
+     * that, reading waits for the oldest.
+     */
+    private void serve(InputStream input, OutputStream output) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        ArrayDeque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+        List<String> batch = new ArrayList<>();
+        int chars = 0;
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank())
+                continue;
+
+            batch.add(line);
+            chars += line.length();
+            if (batch.size() < BATCH_REQUESTS && chars < BATCH_CHARS && in.ready())
+                continue;
+
+            List<String> requests = batch;
+            pending.add(pool.submit(() -> answer(requests, out)));
+            batch = new ArrayList<>();
+            chars = 0;
+
+            while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() > 4 * threads))
+                pending.poll().join();
+        }
+
+        if (!batch.isEmpty())
+            answer(batch, out);
+        for (ForkJoinTask<?> task : pending)
+            task.join();
+    }
+
+    /**
+     * Answers a batch of requests with one write.
+     */
+    private void answer(List<String> requests, Writer out) {
+        Worker worker = workers.poll();
+        if (worker == null)
+            worker = new Worker();
+
+        try {
+            worker.out.setLength(0);
+            for (String request : requests) {
+                answer(request, worker);
+                worker.out.append('\n');
+            }
+
+            synchronized (out) {
+                out.append(worker.out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (Main.debug)
+                System.out.println("Response not written: " + e);
+        } finally {
+            workers.offer(worker);
+        }
+    }
+
+    /**
+     * Appends the response to one request to <code>worker.out</code>.  A
+     * request that fails in any other way, or nests too deeply for the
+     * stack, is answered with the failure, so the rest of its batch and the
+     * server carry on.  Other errors are left to end the server.
+     */
+    private void answer(String request, Worker worker) {
+        StringBuilder out = worker.out;
+        int start = out.length();
+        String id = "null";
+        try {
+            Request parsed = new Request(request, worker);
+            id = parsed.id;
+            answer(parsed, worker);
+        } catch (RuntimeException | StackOverflowError e) {
+            out.setLength(start);
+            out.append("{\"id\": ").append(id).append(", \"ok\": ");
+            failed(out, "Internal error: " + e, List.of());
+        }
+    }
+
+    private void answer(Request parsed, Worker worker) {
+        StringBuilder out = worker.out;
+        out.append("{\"id\": ").append(parsed.id).append(", \"ok\": ");
+        if (parsed.error != null) {
+            failed(out, "Invalid request: " + parsed.error, List.of());
+            return;
+        }
+
+        Main.Parser parser;
+        if (parsed.path == null) {
+            worker.lexer.reset(worker.chars, 0, worker.length);
+            parser = new Main.Parser(worker.lexer);
+        } else {
+            File file;
+            try {
+                Path path = root.resolve(parsed.path).toRealPath();
+                if (!path.startsWith(root)) {
+                    failed(out, "Path outside the served directory!", List.of());
+                    return;
+                }
+                file = path.toFile();
+            } catch (NoSuchFileException | InvalidPathException e) {
+                failed(out, "File not found!", List.of());
+                return;
+            } catch (IOException e) {
+                failed(out, "File could not be read!", List.of());
+                return;
+            }
+
+            if (LayoutBinary.isBinary(file)) {
+                try {
+                    LayoutTree.Window tree = LayoutBinary.load(file);
+                    succeeded(out, tree.title(), tree.width(), tree.height(), components(tree.widgets()));
+                } catch (IOException e) {
+                    failed(out, "File could not be read!", List.of());
+                } catch (IllegalArgumentException e) {
+                    failed(out, "Invalid binary layout: " + e.getMessage(), List.of());
+                }
+                return;
+            }
+
+            if (file.length() >= Main.Lexer.PARALLEL_SIZE) {
+                parser = new Main.Parser(new Main.Lexer(file));
+            } else {
+                try {
+                    read(file, worker);
+                } catch (NoSuchFileException e) {
+                    failed(out, "File not found!", List.of());
+                    return;
+                } catch (IOException e) {
+                    failed(out, "File could not be read!", List.of());
+                    return;
+                }
+                worker.lexer.reset(worker.chars, 0, worker.length);
+                parser = new Main.Parser(worker.lexer);
+            }
+        }
+
+        Summary summary = worker.summary;
+        parser.listener = summary;
+        if (parser.parseFile())
+            succeeded(out, summary.title, summary.width, summary.height, summary.components);
+        else
+            failed(out, parser.error, parser.diagnostics);
+    }
+
+    private static void succeeded(StringBuilder out, String title, int width, int height, int components) {
+        out.append("true, \"title\": ");
+        quote(out, title);
+        out.append(", \"width\": ").append(width).append(", \"height\": ").append(height)
+                .append(", \"components\": ").append(components).append('}');
+    }
+
+    private static void failed(StringBuilder out, String error, List<Diagnostic> diagnostics) {
+        out.append("false, \"error\": ");
+        quote(out, error);
+        if (!diagnostics.isEmpty()) {
+            out.append(", \"diagnostics\": [");
+            for (int x = 0; x < diagnostics.size(); x++) {
+                Diagnostic diagnostic = diagnostics.get(x);
+                out.append(x > 0 ? ", " : "").append("{\"line\": ").append(diagnostic.line())
+                        .append(", \"column\": ").append(diagnostic.column()).append(", \"message\": ");
+                quote(out, diagnostic.message());
+                out.append('}');
+            }
+            out.append(']');
+        }
+        out.append('}');
+    }
+
+    /**
+     * Number of Swing components the widgets make, counting every radio
+     * button and everything inside panels.
+     */
+    private static int components(List<LayoutTree.Widget> widgets) {
+        ArrayDeque<Iterator<LayoutTree.Widget>> open = new ArrayDeque<>();
+        open.push(widgets.iterator());
+        int count = 0;
+        while (!open.isEmpty()) {
+            if (!open.peek().hasNext()) {
+                open.pop();
+                continue;
+            }
+
+            LayoutTree.Widget widget = open.peek().next();
+            if (widget instanceof LayoutTree.Group group) {
+                count += group.radios().size();
+            } else if (widget instanceof LayoutTree.Panel panel) {
+                count++;
+                open.push(panel.widgets().iterator());
+            } else {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads a file into <code>worker.chars</code>, decoding it as the lexer
+     * does.  UTF-8 never has more characters than bytes.
+     */
+    private static void read(File file, Worker worker) throws IOException {
+        ByteBuffer bytes = worker.bytes;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            int size = (int) channel.size();
+            if (bytes.capacity() < size)
+                bytes = worker.bytes = ByteBuffer.allocate(Math.max(size, bytes.capacity() * 2));
+
+            bytes.clear().limit(size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+            }
+            bytes.flip();
+        }
+
+        worker.reserve(bytes.remaining());
+        CharBuffer chars = CharBuffer.wrap(worker.chars);
+        worker.decoder.reset();
+        worker.decoder.decode(bytes, chars, true);
+        worker.decoder.flush(chars);
+        worker.length = chars.position();
+    }
+
+    /**
+     * Writes <code>text</code> as a JSON string.
+     */
+    private static void quote(StringBuilder out, String text) {
+        out.append('"');
+        for (int x = 0; x < text.length(); x++) {
+            char c = text.charAt(x);
+            if (c == '"' || c == '\\')
+                out.append('\\').append(c);
+            else if (c == '\n')
+                out.append("\\n");
+            else if (c < ' ')
+                out.append(String.format("\\u%04x", (int) c));
+            else
+                out.append(c);
+        }
+        out.append('"');
+    }
+
+    /**
+     * One request line.  Only a flat object of strings, numbers,
+     * <code>true</code>, <code>false</code> and <code>null</code> is
+     * accepted.  The source is decoded straight into
+     * <code>worker.chars</code> rather than into a String.
+     */
+    private static final class Request {
+        private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?");
+
+        private final String line;
+        private int x;
+        /**
+         * The id as it was written, ready to be echoed.
+         */
+        String id = "null";
+        String path;
+        /**
+         * Why the line is not a valid request, or null.
+         */
+        String error;
+
+        Request(String _line, Worker worker) {
+            line = _line;
+            try {
+                parse(worker);
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+        }
+
+        private void parse(Worker worker) {
+            boolean source = false;
+            expect('{');
+            if (peek() != '}') {
+                do {
+                    String key = string();
+                    expect(':');
+                    switch (key) {
+                        case "id" -> id = line.substring(skipValue(), x);
+                        case "path" -> path = string();
+                        case "source" -> {
+                            source = true;
+                            worker.reserve(line.length());
+                            worker.length = decodeString(worker.chars);
+                        }
+                        default -> skipValue();
+                    }
+                } while (accept(','));
+            }
+            expect('}');
+            if (peek() != 0)
+                throw new IllegalArgumentException("Text after the object at " + x);
+            if (source == (path != null))
+                throw new IllegalArgumentException("Give either \"source\" or \"path\"");
+        }
+
+        /**
+         * Next character that is not white space, or 0 at the end.
+         */
+        private char peek() {
+            while (x < line.length() && Character.isWhitespace(line.charAt(x)))
+                x++;
+            return x < line.length() ? line.charAt(x) : 0;
+        }
+
+        private boolean accept(char c) {
+            if (peek() != c)
+                return false;
+            x++;
+            return true;
+        }
+
+        private void expect(char c) {
+            if (!accept(c))
+                throw new IllegalArgumentException("'" + c + "' expected at " + x);
+        }
+
+        /**
+         * Skips a string, number or literal.
+         *
+         * @return Offset of the value
+         */
+        private int skipValue() {
+            char c = peek();
+            int start = x;
+            if (c == '"') {
+                string();
+                return start;
+            }
+
+            while (x < line.length() && ",}".indexOf(line.charAt(x)) < 0 && !Character.isWhitespace(line.charAt(x)))
+                x++;
+            String value = line.substring(start, x);
+            if (!value.equals("true") && !value.equals("false") && !value.equals("null")
+                    && !NUMBER.matcher(value).matches())
+                throw new IllegalArgumentException("Value expected at " + start);
+            return start;
+        }
+
+        /**
+         * Reads a string.  One without escapes, such as any key, is taken
+         * from the line as it is.
+         */
+        private String string() {
+            expect('"');
+            int end = x;
+            while (end < line.length() && line.charAt(end) != '"' && line.charAt(end) != '\\')
+                end++;
+            if (end < line.length() && line.charAt(end) == '"') {
+                String string = line.substring(x, end);
+                x = end + 1;
+                return string;
+            }
+
+            x--;
+            char[] chars = new char[line.length() - x];
+            return new String(chars, 0, decodeString(chars));
+        }
+
+        /**
+         * Decodes a string into <code>chars</code>, which must hold at
+         * least as many characters as the rest of the line.
+         *
+         * @return Number of characters decoded
+         */
+        private int decodeString(char[] chars) {
+            expect('"');
+            int length = 0;
+            while (true) {
+                if (x == line.length())
+                    throw new IllegalArgumentException("Unterminated string");
+
+                char c = line.charAt(x++);
+                if (c == '"')
+                    return length;
+                if (c != '\\') {
+                    chars[length++] = c;
+                    continue;
+                }
+
+                c = x < line.length() ? line.charAt(x++) : 0;
+                chars[length++] = switch (c) {
+                    case '"', '\\', '/' -> c;
+                    case 'b' -> '\b';
+                    case 'f' -> '\f';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    case 't' -> '\t';
+                    case 'u' -> {
+                        int unicode = 0;
+                        for (int y = 0; y < 4; y++) {
+                            int digit = x < line.length() ? Character.digit(line.charAt(x++), 16) : -1;
+                            if (digit < 0)
+                                throw new IllegalArgumentException("Bad escape at " + x);
+                            unicode = unicode * 16 + digit;
+                        }
+                        yield (char) unicode;
+                    }
+                    default -> throw new IllegalArgumentException("Bad escape at " + x);
+                };
+            }
+        }
+    }
+}
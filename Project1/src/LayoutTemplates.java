@@ -0,0 +1,86 @@
+/*
+  Project:  Project 1
+  Description:  Table that turns structurally equal subtrees of a layout
+                tree into one shared instance.
+ */
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Tree nodes are immutable, so a subtree repeated many times, such as one
+ * keypad per row, can be held once and referenced from every place it
+ * appears.  Nodes must be interned bottom-up: a panel is then equal to a
+ * template only if its widgets are the template's widgets, compared by
+ * identity, so interning a panel costs time in its own widget count and not
+ * in the size of its subtree.  A widget that was not interned simply matches
+ * nothing.
+ */
+final class LayoutTemplates {
+    private final Map<Key, LayoutTree.Widget> table = new HashMap<>();
+    private int copies;
+
+    /**
+     * Node compared by its fields, with the widgets of a panel compared by
+     * identity.  The other widgets have no child widgets, so their record
+     * equality is already shallow.
+     */
+    private record Key(LayoutTree.Widget widget) {
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key key))
+                return false;
+            if (!(widget instanceof LayoutTree.Panel panel))
+                return widget.equals(key.widget);
+            if (!(key.widget instanceof LayoutTree.Panel other) || !panel.layout().equals(other.layout()))
+                return false;
+
+            List<LayoutTree.Widget> widgets = panel.widgets();
+            List<LayoutTree.Widget> others = other.widgets();
+            if (widgets.size() != others.size())
+                return false;
+            for (int x = 0; x < widgets.size(); x++) {
+                if (widgets.get(x) != others.get(x))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            if (!(widget instanceof LayoutTree.Panel panel))
+                return widget.hashCode();
+
+            int hash = panel.layout().hashCode();
+            for (LayoutTree.Widget child : panel.widgets())
+                hash = 31 * hash + System.identityHashCode(child);
+            return hash;
+        }
+    }
+
+    /**
+     * Returns the template equal to <code>widget</code>, which becomes the
+     * template if there is none yet.
+     *
+     * @param widget Node whose widgets, if any, have been interned
+     * @return Shared node of the same class
+     */
+    @SuppressWarnings("unchecked")
+    <T extends LayoutTree.Widget> T intern(T widget) {
+        LayoutTree.Widget template = table.putIfAbsent(new Key(widget), widget);
+        if (template == null)
+            return widget;
+
+        copies++;
+        return (T) template;
+    }
+
+    /**
+     * Number of widgets replaced by an existing template.
+     */
+    int copies() {
+        return copies;
+    }
+}
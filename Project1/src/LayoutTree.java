@@ -0,0 +1,77 @@
+/*
+  Project:  Project 1
+  Description:  Immutable layout tree produced by the parser. Holds no Swing
+                types, so a file can be validated without loading AWT.
+ */
+
+import java.util.List;
+
+
+final class LayoutTree {
+
+    private LayoutTree() {
+    }
+
+    /**
+     * Any node that may appear in the widget list of a window or panel.
+     */
+    interface Widget {
+    }
+
+    /**
+     * Root of the tree: <code>Window STRING ( NUMBER , NUMBER ) layout widgets End .</code>
+     */
+    record Window(String title, int width, int height, Layout layout, List<Widget> widgets) {
+        Window {
+            widgets = List.copyOf(widgets);
+        }
+    }
+
+    /**
+     * Layout manager of a container.  <code>type</code> is either
+     * <code>FLOW</code> or <code>GRID</code>; the grid fields are zero for flow.
+     */
+    record Layout(Main.TokenType type, int rows, int columns, int hGap, int vGap) {
+        static final Layout FLOW = new Layout(Main.TokenType.FLOW, 0, 0, 0, 0);
+
+        static Layout grid(int rows, int columns, int hGap, int vGap) {
+            return new Layout(Main.TokenType.GRID, rows, columns, hGap, vGap);
+        }
+    }
+
+    record Panel(Layout layout, List<Widget> widgets) implements Widget {
+        Panel {
+            widgets = List.copyOf(widgets);
+        }
+    }
+
+    /**
+     * A widget drawn inside the borders of panels that held nothing else,
+     * made by <code>LayoutOptimizer</code> in place of those panels.
+     * <code>frames</code> holds the layouts of the removed panels from the
+     * outermost inwards; <code>widget</code> is a label or a panel.
+     */
+    record Framed(List<Layout> frames, Widget widget) implements Widget {
+        Framed {
+            frames = List.copyOf(frames);
+        }
+    }
+
+    record Button(String text) implements Widget {
+    }
+
+    record Label(String text) implements Widget {
+    }
+
+    record Textfield(int width) implements Widget {
+    }
+
+    record Group(List<Radio> radios) implements Widget {
+        Group {
+            radios = List.copyOf(radios);
+        }
+    }
+
+    record Radio(String text) {
+    }
+}
@@ -0,0 +1,200 @@
+/*
+  Project:  Project 1
+  Description:  Flow panel that holds components only for the cells in view.
+ */
+
+import java.awt.*;
+import java.util.BitSet;
+import java.util.List;
+
+
+/**
+ * Lays its cells out exactly as a centered <code>FlowLayout</code> with
+ * the default gaps would.  Cells wrap at the width of the panel, so every
+ * cell is measured up front.  Each cell then costs four ints for its size
+ * and position, and each row two, however many components are in view.
+ * Positions only depend on the width and insets of the panel, so they are
+ * computed again only when one of them changes, not on every scroll.
+ */
+@SuppressWarnings("serial")
+final class LazyFlowPanel extends LazyPanel {
+    private static final int GAP = 5;
+
+    private final int[] widths;
+    private final int[] heights;
+    private final int[] xs;
+    private final int[] ys;
+    /**
+     * First cell of each row, and the bottom edge of the row, as of the last
+     * <code>arrange()</code>.
+     */
+    private final int[] rowStarts;
+    private final int[] rowBottoms;
+    private final Dimension preferredRow = new Dimension();
+    private final Dimension minimumRow = new Dimension();
+    private int rows;
+    /**
+     * Width and insets the positions were computed for.
+     */
+    private int arrangedWidth = -1;
+    private Insets arrangedInsets;
+
+    /**
+     * @param _widgets Widgets of the panel; each radio of a group takes a cell
+     */
+    LazyFlowPanel(List<LayoutTree.Widget> _widgets) {
+        super(_widgets);
+        int count = cellCount();
+        widths = new int[count];
+        heights = new int[count];
+        xs = new int[count];
+        ys = new int[count];
+        rowStarts = new int[count + 1];
+        rowBottoms = new int[count];
+
+        long[] total = new long[2];
+        measure(count, (cell, preferred, minimum) -> {
+            widths[cell] = preferred.width;
+            heights[cell] = preferred.height;
+            total[0] += preferred.width;
+            total[1] += minimum.width;
+            preferredRow.height = Math.max(preferredRow.height, preferred.height);
+            minimumRow.height = Math.max(minimumRow.height, minimum.height);
+        });
+        long gaps = (long) Math.max(0, count - 1) * GAP;
+        preferredRow.width = (int) Math.min(Integer.MAX_VALUE / 2, total[0] + gaps);
+        minimumRow.width = (int) Math.min(Integer.MAX_VALUE / 2, total[1] + gaps);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet())
+            return super.getPreferredSize();
+
+        return flowSize(preferredRow);
+    }
+
+    @Override
+    public Dimension getMinimumSize() {
+        if (isMinimumSizeSet())
+            return super.getMinimumSize();
+
+        return flowSize(minimumRow);
+    }
+
+    /**
+     * Size of the panel with every cell in one row of size <code>row</code>.
+     */
+    private Dimension flowSize(Dimension row) {
+        Insets insets = getInsets();
+        return new Dimension(insets.left + insets.right + row.width + GAP * 2,
+                insets.top + insets.bottom + row.height + GAP * 2);
+    }
+
+    /**
+     * Same arithmetic as <code>FlowLayout.layoutContainer()</code>.
+     */
+    @Override
+    void arrange() {
+        Insets insets = getInsets();
+        if (getWidth() == arrangedWidth && insets.equals(arrangedInsets))
+            return;
+
+        arrangedWidth = getWidth();
+        arrangedInsets = insets;
+        int maxWidth = getWidth() - (insets.left + insets.right + GAP * 2);
+        int x = 0;
+        int y = insets.top + GAP;
+        int rowHeight = 0;
+        rows = 0;
+        for (int cell = 0; cell < widths.length; cell++) {
+            if (x == 0 || x + widths[cell] <= maxWidth) {
+                if (x > 0)
+                    x += GAP;
+                x += widths[cell];
+                rowHeight = Math.max(rowHeight, heights[cell]);
+            } else {
+                endRow(insets.left + GAP, y, maxWidth - x, rowHeight, cell);
+                x = widths[cell];
+                y += GAP + rowHeight;
+                rowHeight = heights[cell];
+            }
+        }
+        endRow(insets.left + GAP, y, maxWidth - x, rowHeight, widths.length);
+    }
+
+    /**
+     * Places the cells of the row that ends before <code>end</code>, as
+     * <code>FlowLayout.moveComponents()</code> does.
+     *
+     * @param space Width left over in the row, split to either side
+     */
+    private void endRow(int x, int y, int space, int height, int end) {
+        x += space / 2;
+        for (int cell = rowStarts[rows]; cell < end; cell++) {
+            xs[cell] = x;
+            ys[cell] = y + (height - heights[cell]) / 2;
+            x += widths[cell] + GAP;
+        }
+        rowBottoms[rows] = y + height;
+        rowStarts[++rows] = end;
+    }
+
+    @Override
+    void cellBounds(int cell, Rectangle bounds) {
+        bounds.setBounds(xs[cell], ys[cell], widths[cell], heights[cell]);
+    }
+
+    @Override
+    void visibleCells(Rectangle visible, BitSet cells) {
+        int bottom = visible.y + visible.height;
+        int right = visible.x + visible.width;
+        for (int row = firstRowBelow(visible.y); row < rows && rowTop(row) < bottom; row++) {
+            for (int cell = firstCellRightOf(row, visible.x); cell < rowStarts[row + 1] && xs[cell] < right; cell++) {
+                if (widths[cell] > 0 && heights[cell] > 0 && ys[cell] < bottom && ys[cell] + heights[cell] > visible.y)
+                    cells.set(cell);
+            }
+        }
+    }
+
+    /**
+     * Top edge of a row, which is the gap below the row above.
+     */
+    private int rowTop(int row) {
+        return row == 0 ? getInsets().top + GAP : rowBottoms[row - 1] + GAP;
+    }
+
+    /**
+     * First row whose bottom edge is below <code>y</code>.  Rows are in
+     * order from the top.
+     */
+    private int firstRowBelow(int y) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (rowBottoms[middle] <= y)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * First cell of a row whose right edge is right of <code>x</code>.
+     * Cells of a row are in order from the left.
+     */
+    private int firstCellRightOf(int row, int x) {
+        int low = rowStarts[row];
+        int high = rowStarts[row + 1];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (xs[middle] + widths[middle] <= x)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
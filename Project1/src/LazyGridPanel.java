@@ -0,0 +1,128 @@
+/*
+  Project:  Project 1
+  Description:  Grid panel that holds components only for the cells in view.
+ */
+
+import java.awt.*;
+import java.util.BitSet;
+import java.util.List;
+
+
+/**
+ * Lays its cells out exactly as <code>GridLayout</code> would.
+ * <p>
+ * <code>GridLayout</code> sizes every cell to the largest preferred size
+ * of all components.  That would need every component, so it is taken
+ * from the first <code>SAMPLE</code> cells instead.
+ */
+@SuppressWarnings("serial")
+final class LazyGridPanel extends LazyPanel {
+    private static final int SAMPLE = 64;
+
+    private final GridLayout grid;
+    private final Dimension preferredCell = new Dimension();
+    private final Dimension minimumCell = new Dimension();
+    private int columns;
+    private int left;
+    private int top;
+    private int cellWidth;
+    private int cellHeight;
+    private int stepX;
+    private int stepY;
+
+    /**
+     * @param _layout  Grid layout of the panel
+     * @param _widgets Widgets of the panel; each radio of a group takes a cell
+     */
+    LazyGridPanel(LayoutTree.Layout _layout, List<LayoutTree.Widget> _widgets) {
+        super(_widgets);
+        grid = new GridLayout(_layout.rows(), _layout.columns(), _layout.hGap(), _layout.vGap());
+
+        measure(Math.min(SAMPLE, cellCount()), (cell, preferred, minimum) -> {
+            preferredCell.width = Math.max(preferredCell.width, preferred.width);
+            preferredCell.height = Math.max(preferredCell.height, preferred.height);
+            minimumCell.width = Math.max(minimumCell.width, minimum.width);
+            minimumCell.height = Math.max(minimumCell.height, minimum.height);
+        });
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet())
+            return super.getPreferredSize();
+
+        return gridSize(preferredCell);
+    }
+
+    @Override
+    public Dimension getMinimumSize() {
+        if (isMinimumSizeSet())
+            return super.getMinimumSize();
+
+        return gridSize(minimumCell);
+    }
+
+    private int columns() {
+        if (grid.getRows() > 0)
+            return (cellCount() + grid.getRows() - 1) / grid.getRows();
+        return grid.getColumns();
+    }
+
+    private int rows() {
+        if (grid.getRows() > 0)
+            return grid.getRows();
+        return (cellCount() + grid.getColumns() - 1) / grid.getColumns();
+    }
+
+    /**
+     * Size of the grid when every cell is <code>cell</code>.
+     */
+    private Dimension gridSize(Dimension cell) {
+        Insets insets = getInsets();
+        int columns = columns();
+        int rows = rows();
+        return new Dimension(insets.left + insets.right + columns * cell.width + (columns - 1) * grid.getHgap(),
+                insets.top + insets.bottom + rows * cell.height + (rows - 1) * grid.getVgap());
+    }
+
+    /**
+     * Same arithmetic as <code>GridLayout.layoutContainer()</code>.
+     */
+    @Override
+    void arrange() {
+        Insets insets = getInsets();
+        columns = columns();
+        int rows = rows();
+        int width = getWidth() - insets.left - insets.right;
+        int height = getHeight() - insets.top - insets.bottom;
+        cellWidth = (width - (columns - 1) * grid.getHgap()) / columns;
+        cellHeight = (height - (rows - 1) * grid.getVgap()) / rows;
+        left = insets.left + (width - (cellWidth * columns + (columns - 1) * grid.getHgap())) / 2;
+        top = insets.top + (height - (cellHeight * rows + (rows - 1) * grid.getVgap())) / 2;
+        stepX = Math.max(1, cellWidth + grid.getHgap());
+        stepY = Math.max(1, cellHeight + grid.getVgap());
+    }
+
+    @Override
+    void cellBounds(int cell, Rectangle bounds) {
+        bounds.setBounds(left + (cell % columns) * stepX, top + (cell / columns) * stepY, cellWidth, cellHeight);
+    }
+
+    @Override
+    void visibleCells(Rectangle visible, BitSet cells) {
+        if (cellWidth <= 0 || cellHeight <= 0)
+            return;
+
+        int firstColumn = Math.max(0, (visible.x - left) / stepX);
+        int lastColumn = Math.min(columns - 1, (visible.x + visible.width - left) / stepX);
+        int firstRow = Math.max(0, (visible.y - top) / stepY);
+        int lastRow = Math.min(rows() - 1, (visible.y + visible.height - top) / stepY);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int x = row * columns + column;
+                if (x < cellCount())
+                    cells.set(x);
+            }
+        }
+    }
+}
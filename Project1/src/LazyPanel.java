@@ -0,0 +1,336 @@
+/*
+  Project:  Project 1
+  Description:  Panel that holds components only for the cells in view and
+                recycles them as the view moves.
+ */
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.HierarchyBoundsAdapter;
+import java.awt.event.HierarchyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Keeps the widget of every cell and a component only for the cells that
+ * intersect the visible rectangle, so memory and painting grow with the
+ * view and not with the number of cells.  A subclass places the cells as
+ * its layout manager would.
+ * <p>
+ * A component whose cell leaves the view is hidden and pooled, and is
+ * handed to the next cell of the same kind that comes into view: buttons,
+ * labels, text fields and radio buttons are given the new cell's text or
+ * width, and any other component is only reused for the same widget,
+ * which the parser shares between equal subtrees.  The pool never holds
+ * more components than are in view.  A cell that has held the keyboard
+ * focus keeps its component, so what the user typed or chose is not lost.
+ * <p>
+ * Leaf sizes come from one stamp component per kind of widget, configured
+ * for each cell in turn.  Any other widget is measured once with a
+ * component that is then dropped, so only the sizes outlive measuring.
+ */
+@SuppressWarnings("serial")
+abstract class LazyPanel extends JPanel {
+    /**
+     * Widget of each cell, or the <code>Radio</code> for a cell of a group.
+     */
+    private final Object[] cells;
+    private final ButtonGroup[] groups;
+    private final Map<Integer, JComponent> live = new HashMap<>();
+    private final BitSet pinned = new BitSet();
+    private final BitSet shown = new BitSet();
+    /**
+     * Hidden components by kind: the widget class for a leaf, the widget
+     * itself for anything else.
+     */
+    private final Map<Object, ArrayDeque<JComponent>> pool = new IdentityHashMap<>();
+    private final PropertyChangeListener focus = this::focused;
+    private final Rectangle bounds = new Rectangle();
+    private int pooled;
+    private int created;
+
+    /**
+     * Receives the sizes of one cell from <code>measure()</code>.
+     */
+    interface CellSize {
+        void cell(int cell, Dimension preferred, Dimension minimum);
+    }
+
+    /**
+     * @param _widgets Widgets of the panel; each radio of a group takes a cell
+     */
+    LazyPanel(List<LayoutTree.Widget> _widgets) {
+        super(null);
+
+        List<Object> cells = new ArrayList<>();
+        List<ButtonGroup> groups = new ArrayList<>();
+        for (LayoutTree.Widget widget : _widgets) {
+            if (widget instanceof LayoutTree.Group node) {
+                ButtonGroup group = new ButtonGroup();
+                for (LayoutTree.Radio radio : node.radios()) {
+                    cells.add(radio);
+                    groups.add(group);
+                }
+            } else {
+                cells.add(widget);
+                groups.add(null);
+            }
+        }
+        this.cells = cells.toArray();
+        this.groups = groups.toArray(new ButtonGroup[0]);
+
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentMoved(ComponentEvent e) {
+                showVisibleCells();
+            }
+        });
+        addHierarchyBoundsListener(new HierarchyBoundsAdapter() {
+            @Override
+            public void ancestorMoved(HierarchyEvent e) {
+                showVisibleCells();
+            }
+
+            @Override
+            public void ancestorResized(HierarchyEvent e) {
+                showVisibleCells();
+            }
+        });
+    }
+
+    /**
+     * Creates the panel that places <code>widgets</code> as
+     * <code>layout</code> would.
+     *
+     * @param layout  Grid or flow layout of the panel
+     * @param widgets Widgets of the panel
+     * @return A <code>LazyGridPanel</code> or a <code>LazyFlowPanel</code>
+     */
+    static LazyPanel create(LayoutTree.Layout layout, List<LayoutTree.Widget> widgets) {
+        if (layout.type() == Main.TokenType.GRID)
+            return new LazyGridPanel(layout, widgets);
+        return new LazyFlowPanel(widgets);
+    }
+
+    /**
+     * Number of cells, counting each radio button of a group.
+     */
+    final int cellCount() {
+        return cells.length;
+    }
+
+    /**
+     * Computes where the cells go at the current size of the panel.
+     */
+    abstract void arrange();
+
+    /**
+     * Sets <code>bounds</code> to the bounds of a cell as of the last
+     * <code>arrange()</code>.
+     */
+    abstract void cellBounds(int cell, Rectangle bounds);
+
+    /**
+     * Adds to <code>cells</code> every cell of non-zero size that intersects
+     * <code>visible</code>, as of the last <code>arrange()</code>.
+     */
+    abstract void visibleCells(Rectangle visible, BitSet cells);
+
+    /**
+     * Measures the first <code>count</code> cells.  Equal widgets are
+     * measured once, and no component made here is kept.
+     */
+    final void measure(int count, CellSize sizes) {
+        Map<Object, JComponent> stamps = new HashMap<>();
+        Map<Object, Dimension[]> leaves = new HashMap<>();
+        Map<Object, Dimension[]> others = new IdentityHashMap<>();
+        for (int x = 0; x < count; x++) {
+            Object cell = cells[x];
+            Dimension[] size;
+            if (isLeaf(cell)) {
+                size = leaves.computeIfAbsent(cell, unused -> {
+                    JComponent stamp = stamps.computeIfAbsent(cell.getClass(), kind -> component(cell));
+                    configure(cell, stamp);
+                    return new Dimension[] {stamp.getPreferredSize(), stamp.getMinimumSize()};
+                });
+            } else {
+                size = others.computeIfAbsent(cell, unused -> {
+                    JComponent component = component(cell);
+                    return new Dimension[] {component.getPreferredSize(), component.getMinimumSize()};
+                });
+            }
+            sizes.cell(x, size[0], size[1]);
+        }
+    }
+
+    @Override
+    public void doLayout() {
+        showVisibleCells();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addPropertyChangeListener("permanentFocusOwner",
+                focus);
+    }
+
+    @Override
+    public void removeNotify() {
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().removePropertyChangeListener("permanentFocusOwner",
+                focus);
+        super.removeNotify();
+    }
+
+    /**
+     * Gives the cells in view a component, takes the components of the
+     * other cells back into the pool, and places every component that is
+     * left.
+     */
+    private void showVisibleCells() {
+        if (cells.length == 0)
+            return;
+
+        LayoutEvents.Build event = new LayoutEvents.Build();
+        event.begin();
+        long start = LayoutMetrics.ENABLED ? System.nanoTime() : 0;
+        int before = created;
+
+        arrange();
+        shown.clear();
+        Rectangle visible = getVisibleRect();
+        if (!visible.isEmpty())
+            visibleCells(visible, shown);
+
+        int capacity = shown.cardinality();
+        for (Iterator<Map.Entry<Integer, JComponent>> i = live.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<Integer, JComponent> entry = i.next();
+            int x = entry.getKey();
+            if (shown.get(x) || pinned.get(x))
+                continue;
+
+            if (groups[x] != null)
+                groups[x].remove((AbstractButton) entry.getValue());
+            if (pooled < capacity)
+                release(cells[x], entry.getValue());
+            else
+                remove(entry.getValue());
+            i.remove();
+        }
+
+        boolean changed = false;
+        for (int x = shown.nextSetBit(0); x >= 0; x = shown.nextSetBit(x + 1)) {
+            if (!live.containsKey(x)) {
+                live.put(x, acquire(x));
+                changed = true;
+            }
+        }
+
+        for (Map.Entry<Integer, JComponent> entry : live.entrySet()) {
+            cellBounds(entry.getKey(), bounds);
+            entry.getValue().setBounds(bounds);
+            entry.getValue().validate();
+        }
+
+        if (changed) {
+            repaint();
+            if (LayoutMetrics.ENABLED || event.isEnabled())
+                SwingBuilder.built(event, start, created - before, true);
+        }
+    }
+
+    /**
+     * Takes a component of the cell's kind from the pool, or creates one.
+     */
+    private JComponent acquire(int x) {
+        Object cell = cells[x];
+        ArrayDeque<JComponent> free = pool.get(isLeaf(cell) ? cell.getClass() : cell);
+        JComponent component;
+        if (free != null && !free.isEmpty()) {
+            component = free.pop();
+            pooled--;
+            configure(cell, component);
+            component.setVisible(true);
+        } else {
+            component = component(cell);
+            created++;
+            add(component);
+        }
+
+        if (groups[x] != null)
+            groups[x].add((AbstractButton) component);
+        return component;
+    }
+
+    /**
+     * Hides a component and keeps it for a later cell of the same kind.
+     */
+    private void release(Object cell, JComponent component) {
+        component.setVisible(false);
+        pool.computeIfAbsent(isLeaf(cell) ? cell.getClass() : cell, kind -> new ArrayDeque<>()).push(component);
+        pooled++;
+    }
+
+    private static JComponent component(Object cell) {
+        if (cell instanceof LayoutTree.Radio radio)
+            return new JRadioButton(radio.text());
+        return SwingBuilder.buildWidget((LayoutTree.Widget) cell);
+    }
+
+    /**
+     * Makes a component of the right kind show a leaf.  A button may have
+     * left the view under the mouse, so its rollover is cleared.
+     */
+    private static void configure(Object cell, JComponent component) {
+        if (cell instanceof LayoutTree.Button button) {
+            ((JButton) component).setText(button.text());
+        } else if (cell instanceof LayoutTree.Label label) {
+            ((JLabel) component).setText(label.text());
+        } else if (cell instanceof LayoutTree.Textfield textField) {
+            ((JTextField) component).setColumns(textField.width());
+        } else if (cell instanceof LayoutTree.Radio radio) {
+            ((JRadioButton) component).setText(radio.text());
+        }
+
+        if (component instanceof AbstractButton button)
+            button.getModel().setRollover(false);
+    }
+
+    /**
+     * True for widgets whose component can be configured for another widget
+     * of the same class.
+     */
+    private static boolean isLeaf(Object cell) {
+        return cell instanceof LayoutTree.Button || cell instanceof LayoutTree.Label
+                || cell instanceof LayoutTree.Textfield || cell instanceof LayoutTree.Radio;
+    }
+
+    /**
+     * Pins the cell holding the new focus owner, if it is one of ours.
+     */
+    private void focused(PropertyChangeEvent e) {
+        Component component = (Component) e.getNewValue();
+        while (component != null && component.getParent() != this)
+            component = component.getParent();
+        if (component == null)
+            return;
+
+        for (Map.Entry<Integer, JComponent> entry : live.entrySet()) {
+            if (entry.getValue() == component) {
+                pinned.set(entry.getKey());
+                return;
+            }
+        }
+    }
+}
@@ -1,696 +1,2076 @@
-/*
-  Name:  Joseph Julian
-  Project:  Project 1
-  Date:  13 Apr 2021
-  Description:  Parses input file and generates GUI.
- */
-
-import javax.swing.*;
-import javax.swing.border.Border;
-import java.awt.*;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Scanner;
-
-
-public class Main {
-    final boolean debug = false;
-    Lexer lexer;
-    Parser parser;
-
-    public static void main(String[] args) {
-        Main test = new Main();
-        test.selectFile();
-    }
-
-    /**
-     * Prompts user to select existing file to be parsed. Takes file
-     * and passes to lexer and parser classes to analyze and parse.
-     */
-    private void selectFile() {
-        int option;
-        JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
-        fileChooser.setCurrentDirectory(new File(System.getProperty("user.dir")));
-
-        do {
-            option = fileChooser.showOpenDialog(null);
-        } while (option != JFileChooser.APPROVE_OPTION && option != JFileChooser.CANCEL_OPTION);
-
-        File file = fileChooser.getSelectedFile();
-
-        lexer = new Lexer(file);
-        lexer.analyzeFile();
-        lexer.printTokens();
-        parser = new Parser();
-
-        if (parser.parseFile())
-            System.out.println("\n\nFile successfully parsed!");
-    }
-
-    enum TokenType {
-        NOT_FOUND, SEMICOLON, COMMA, STRING, WIDGET, END, WINDOW,
-        LAYOUT, FLOW, BUTTON, LABEL, PANEL, TEXT_FIELD, GRID, GROUP,
-        RADIO, QUOTATION, OPEN_PARENTHESIS, CLOSE_PARENTHESIS, COLON,
-        PERIOD, NUMBER, END_OF_FILE
-    }
-
-    enum Status {IN_PARENTHESIS, IN_QUOTATION, DEFAULT}
-
-
-    private static class Lexer {
-        private final ArrayList<Token> tokens;
-        private File file;
-        private int i;
-        private TokenType lastToken;
-        private Status status;
-        private String line = "";
-
-        /**
-         * Initializes private data members and opens the input file.
-         *
-         * @param _file User-selected file
-         */
-        public Lexer(File _file) {
-            if (_file != null) {
-                file = _file;
-            }
-
-            tokens = new ArrayList<>();
-        }
-
-        /**
-         * Adds given token to <code>tokens</code>, after checking some contextual
-         * information.  Even if the lexeme is marked as a special token, verify
-         * that it's not in a parenthesis (a number literal) or in a quotation
-         * (a string literal):
-         *
-         * @param token  -
-         * @param lexeme -
-         */
-        private void addToken(TokenType token, String lexeme) {
-            if (status == Status.IN_PARENTHESIS) {
-                if (token == TokenType.CLOSE_PARENTHESIS) {
-                    lastToken = token;
-                    tokens.add(new Token(token, lexeme));
-                    status = Status.DEFAULT;
-                    return;
-                }
-
-                lastToken = token;
-                tokens.add(new Token(token, lexeme));
-                return;
-            } else if (status == Status.IN_QUOTATION) {
-                if (token == TokenType.QUOTATION) {
-                    if (lastToken == TokenType.QUOTATION) {
-                        tokens.add(new Token(TokenType.STRING, ""));
-                        tokens.add(new Token(token, lexeme));
-                        status = Status.DEFAULT;
-                        return;
-                    }
-
-                    lastToken = token;
-                    tokens.add(new Token(token, lexeme));
-                    status = Status.DEFAULT;
-                    return;
-                }
-
-                if (lastToken == TokenType.STRING) {
-                    int x = tokens.size() - 1;
-                    tokens.get(x).lexeme += " " + lexeme;
-                    return;
-                }
-
-                token = TokenType.STRING;
-                lastToken = token;
-                tokens.add(new Token(token, lexeme));
-                return;
-            } else if (token == TokenType.QUOTATION) {
-                lastToken = token;
-                tokens.add(new Token(token, lexeme));
-                status = Status.IN_QUOTATION;
-                return;
-            } else if (token == TokenType.OPEN_PARENTHESIS) {
-                lastToken = token;
-                tokens.add(new Token(token, lexeme));
-                status = Status.IN_PARENTHESIS;
-                return;
-            }
-
-            lastToken = token;
-            tokens.add(new Token(token, lexeme));
-        }
-
-        private void analyzeFile() {
-            Scanner scanner = openFile(file);
-
-            if (scanner != null) {
-                analyzeInput(scanner);
-            }
-        }
-
-        /**
-         * Calls analyzeLine() on each line in the Scanner parameter.
-         *
-         * @param scanner File data
-         */
-        private void analyzeInput(Scanner scanner) {
-            while (scanner.hasNextLine()) {
-                String nextLine = scanner.nextLine();
-                if (!(nextLine.startsWith("/") || nextLine.isEmpty()))
-                    analyzeLine(nextLine);
-            }
-        }
-
-        /**
-         * Takes a single String and analyzes it into Token objects.
-         *
-         * @param nextLine String to be analyzed
-         */
-        private void analyzeLine(String nextLine) {
-            line = nextLine;
-            i = 0;
-            char character = nextChar();
-            String punctuations = "\"(),:;.";
-
-            do {
-                StringBuilder currentLexeme = new StringBuilder();
-                while (character != 0 && (Character.isWhitespace(character)
-                        || !(punctuations.contains(String.valueOf(character))
-                        || Character.isAlphabetic(character)
-                        || Character.isDigit(character)))) {
-                    character = nextChar();
-                }
-
-                if (character == 0) return;
-
-                if (Character.isLetterOrDigit(character)) {
-                    currentLexeme.append(character);
-                    character = nextChar();
-                    while (Character.isLetterOrDigit(character)) {
-                        currentLexeme.append(character);
-                        character = nextChar();
-                    }
-                    TokenType token = testToken(currentLexeme.toString());
-                    addToken(token, currentLexeme.toString());
-                } else if (punctuations.contains(String.valueOf(character))) {
-                    currentLexeme = new StringBuilder(String.valueOf(character));
-                    TokenType token = testPunctuation(currentLexeme.toString());
-                    addToken(token, currentLexeme.toString());
-                    character = nextChar();
-                }
-            } while (character != 0);
-        }
-
-
-        /**
-         * Returns next character in line. Returns 0 if end of line.
-         */
-        private char nextChar() {
-            if (i == line.length()) {
-                i = 0;
-                return 0;
-            } else return line.charAt(i++);
-        }
-
-        /**
-         * Called by analyzeFile().
-         *
-         * @param file File to be opened into a Scanner object
-         * @return Scanner from parameter
-         */
-        private Scanner openFile(File file) {
-            Scanner scanner;
-
-            try {
-                scanner = new Scanner(file);
-            } catch (FileNotFoundException e) {
-                System.out.println("Error: File not found!");
-
-                return null;
-            }
-            return scanner;
-        }
-
-        private void printTokens() {
-            for (int x = 0; x < tokens.size(); x++) {
-                if (x % 5 == 0)
-                    System.out.println("\n");
-
-                System.out.print(tokens.get(x) + " ");
-            }
-        }
-
-
-        /**
-         * Tests punctuation of given lexeme and returns TokenType.
-         *
-         * @param lexeme lexeme to be analyzed
-         * @return TokenType of the lexeme
-         */
-        private TokenType testPunctuation(String lexeme) {
-            return switch (lexeme) {
-                case "\"" -> TokenType.QUOTATION;
-                case "(" -> TokenType.OPEN_PARENTHESIS;
-                case ")" -> TokenType.CLOSE_PARENTHESIS;
-                case "," -> TokenType.COMMA;
-                case ":" -> TokenType.COLON;
-                case ";" -> TokenType.SEMICOLON;
-                case "." -> TokenType.PERIOD;
-                default -> TokenType.NOT_FOUND;
-            };
-        }
-
-        /**
-         * Tests non-punctuation lexemes for token type.
-         *
-         * @param lexeme lexeme to be analyzed
-         * @return TokenType of the lexeme
-         */
-        private TokenType testToken(String lexeme) {
-            if (status == Status.IN_QUOTATION) {
-                return TokenType.STRING;
-            } else if (status == Status.IN_PARENTHESIS) {
-                boolean flag = true;
-                for (int x = 0; x < lexeme.length(); x++) {
-                    char c = lexeme.charAt(x);
-                    if (!Character.isDigit(c))
-                        flag = false;
-                }
-
-                if (flag) {
-                    return TokenType.NUMBER;
-                } else
-                    return TokenType.NOT_FOUND;
-            } else
-                switch (lexeme.charAt(0)) {
-                    case 'B':
-                        if (lexeme.equals("Button")) {
-                            return TokenType.BUTTON;
-                        }
-                    case 'E':
-                        if (lexeme.equals("End")) {
-                            return TokenType.END;
-                        }
-                    case 'F':
-                        if (lexeme.equals("Flow")) {
-                            return TokenType.FLOW;
-                        }
-                    case 'G':
-                        if (lexeme.equals("Grid")) {
-                            return TokenType.GRID;
-                        } else if (lexeme.equals("Group")) {
-                            return TokenType.GROUP;
-                        }
-                    case 'L':
-                        if (lexeme.equals("Label")) {
-                            return TokenType.LABEL;
-                        } else if (lexeme.equals("Layout")) {
-                            return TokenType.LAYOUT;
-                        }
-                    case 'P':
-                        if (lexeme.equals("Panel")) {
-                            return TokenType.PANEL;
-                        }
-                    case 'R':
-                        if (lexeme.equals("Radio")) {
-                            return TokenType.RADIO;
-                        }
-                    case 'T':
-                        if (lexeme.equals("Textfield")) {
-                            return TokenType.TEXT_FIELD;
-                        }
-                    case 'W':
-                        if (lexeme.equals("Window")) {
-                            return TokenType.WINDOW;
-                        }
-                    default:
-                        return TokenType.NUMBER;
-                }
-        }
-    }
-
-
-    private static class Token {
-        TokenType type;
-        String lexeme;
-
-        public Token(TokenType _type, String _lexeme) {
-            type = _type;
-            lexeme = _lexeme;
-        }
-
-        @Override
-        public String toString() {
-            return String.format("[%s, \"%s\"]", type, lexeme);
-        }
-    }
-
-
-    private class Parser {
-        ArrayList<Token> tokens;
-        JFrame window;
-        Container currentContainer;
-        ButtonGroup group;
-        int i = 0;
-        TokenType token;
-        String error = "";
-
-        /**
-         * Parses file and verifies syntax of each line.
-         */
-        private boolean parseFile() {
-            tokens = lexer.tokens;
-            token = nextToken();
-
-            if (gui()) {
-                window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-                window.setLocationRelativeTo(null);
-                window.setVisible(true);
-                return true;
-            } else {
-                System.out.printf("Error: Incorrect syntax at token %d: %s\n", i + 1, error);
-                return false;
-            }
-        }
-
-
-        private String getToken() {
-            return tokens.get(i - 1).lexeme;
-        }
-
-
-        private boolean gui() {
-            if (token == TokenType.WINDOW) {
-                token = nextToken();
-                if (token == TokenType.QUOTATION) {
-                    token = nextToken();
-                    if (token == TokenType.STRING) {
-                        currentContainer = window = new JFrame(getToken());
-                        token = nextToken();
-                        if (token == TokenType.QUOTATION) {
-                            token = nextToken();
-                            if (token == TokenType.OPEN_PARENTHESIS) {
-                                token = nextToken();
-                                if (token == TokenType.NUMBER) {
-                                    int width = Integer.parseInt(getToken());
-                                    token = nextToken();
-                                    if (token == TokenType.COMMA) {
-                                        token = nextToken();
-                                        if (token == TokenType.NUMBER) {
-                                            int height = Integer.parseInt(getToken());
-                                            token = nextToken();
-                                            if (token == TokenType.CLOSE_PARENTHESIS) {
-                                                token = nextToken();
-                                                if (layout()) {
-                                                    token = nextToken();
-                                                    if (widgets()) {
-                                                        if (token == TokenType.END) {
-                                                            token = nextToken();
-                                                            if (token == TokenType.PERIOD) {
-                                                                window.setMinimumSize(new Dimension(width, height));
-                                                                return true;
-                                                            } else
-                                                                error = "GUI: \"Period\" token not found.";
-                                                        } else
-                                                            error += "  GUI: \"End\" token not found.";
-                                                    } else
-                                                        error += "  GUI: \"Widgets\" pattern not found.";
-                                                } else
-                                                    error += "  (GUI: \"Layout\" pattern not found.)";
-                                            } else
-                                                error = "GUI: \"Close_Parenthesis\" token not found.";
-                                        } else
-                                            error += "GUI: \"Number\" token not found.";
-                                    } else
-                                        error = "GUI: \"Comma\" token not found.";
-                                } else
-                                    error += "GUI: \"Number\" token not found.";
-                            } else
-                                error = "GUI: \"Open_Parenthesis\" token not found.";
-                        } else
-                            error = "GUI: \"Quotation\" token not found.";
-                    } else
-                        error += "  (GUI: \"String\" token not found.)";
-                } else
-                    error = "GUI: \"Quotation\" token not found.";
-            } else
-                error = "GUI: \"Window\" token not found.";
-
-            return false;
-        }
-
-
-        private boolean layout() {
-            if (token == TokenType.LAYOUT) {
-                token = nextToken();
-                if (layout_type()) {
-                    token = nextToken();
-                    if (token == TokenType.COLON) {
-                        return true;
-                    } else
-                        error = "(\"Colon\" token not found.)";
-                } else
-                    error += "  \"Layout_Type\" pattern not found.";
-            } else
-                error += "  (\"Layout\" token not found.)";
-
-            return false;
-        }
-
-        private boolean layout_type() {
-            if (token == TokenType.FLOW) {
-                currentContainer.setLayout(new FlowLayout());
-                return true;
-            } else if (token == TokenType.GRID) {
-                token = nextToken();
-                if (token == TokenType.OPEN_PARENTHESIS) {
-                    token = nextToken();
-                    if (token == TokenType.NUMBER) {
-                        int rows = Integer.parseInt(getToken());
-                        token = nextToken();
-                        if (token == TokenType.COMMA) {
-                            token = nextToken();
-                            if (token == TokenType.NUMBER) {
-                                int columns = Integer.parseInt(getToken());
-                                token = nextToken();
-                                if (token == TokenType.CLOSE_PARENTHESIS) {
-                                    currentContainer.setLayout(new GridLayout(rows, columns));
-                                    return true;
-                                } else if (token == TokenType.COMMA) {
-                                    token = nextToken();
-                                    if (token == TokenType.NUMBER) {
-                                        int h_gap = Integer.parseInt(getToken());
-                                        token = nextToken();
-                                        if (token == TokenType.COMMA) {
-                                            token = nextToken();
-                                            if (token == TokenType.NUMBER) {
-                                                int v_gap = Integer.parseInt(getToken());
-                                                token = nextToken();
-                                                if (token == TokenType.CLOSE_PARENTHESIS) {
-                                                    currentContainer.setLayout(new GridLayout(rows, columns, h_gap, v_gap));
-                                                    return true;
-                                                } else
-                                                    error = "\"Close_Parenthesis\" token not found.";
-                                            } else
-                                                error += "  (\"Number\" token not found.)";
-                                        } else
-                                            error = "\"Comma\" token not found.";
-                                    } else
-                                        error += "  (\"Number\" token not found.)";
-                                } else
-                                    error = "\"Comma\" or \"Close_Parenthesis\" token not found.";
-                            } else
-                                error += "  (\"Number\" token not found.)";
-                        } else
-                            error = "\"Comma\" token not found.";
-                    } else
-                        error += "  (\"Number\" token not found.)";
-                } else
-                    error = "\"Open_Parenthesis\" token not found.";
-            } else
-                error = "\"Flow\" or \"Grid\" token not found.";
-
-            return false;
-        }
-
-
-        private TokenType nextToken() {
-            if (i == tokens.size()) {
-                return TokenType.END_OF_FILE;
-            } else {
-                return tokens.get(i++).type;
-            }
-        }
-
-        private boolean radioButton() {
-            if (token == TokenType.RADIO) {
-                token = nextToken();
-                if (token == TokenType.QUOTATION) {
-                    token = nextToken();
-                    if (token == TokenType.STRING) {
-                        JRadioButton button = new JRadioButton(getToken());
-                        token = nextToken();
-                        if (token == TokenType.QUOTATION) {
-                            token = nextToken();
-                            if (token == TokenType.SEMICOLON) {
-                                currentContainer.add(button);
-                                group.add(button);
-                                return true;
-                            } else
-                                error = "\"Semicolon\" token not found.";
-                        } else
-                            error += "  (\"Quotation\" token not found.)";
-                    } else
-                        error += "  (\"String\" token not found.)";
-                } else
-                    error += "  (\"Quotation\" token not found.)";
-            } else
-                error += "  (\"Radio_Button\" pattern not found.)";
-
-            return false;
-        }
-
-
-        private boolean radButtons() {
-            boolean flag = false;
-            int temp = i;
-
-            if (radioButton()) {
-                flag = true;
-                token = nextToken();
-                radButtons();
-            } else {
-                i = temp;
-            }
-
-            return flag;
-        }
-
-        private boolean widget() {
-            switch (token) {
-                case BUTTON:
-                    token = nextToken();
-                    if (token == TokenType.QUOTATION) {
-                        token = nextToken();
-                        if (token == TokenType.STRING) {
-                            JButton button = new JButton(getToken());
-                            token = nextToken();
-                            if (token == TokenType.QUOTATION) {
-                                token = nextToken();
-                                if (token == TokenType.SEMICOLON) {
-                                    currentContainer.add(button);
-                                    return true;
-                                } else
-                                    error = "Widget: \"Semicolon\" token not found.";
-                            } else
-                                error += "  (Widget: \"Quotation\" token not found.)";
-                        } else
-                            error += "  (Widget: \"String\" token not found.)";
-                    } else
-                        error += "  (Widget: \"Quotation\" token not found.)";
-                case GROUP:
-                    token = nextToken();
-                    group = new ButtonGroup();
-                    if (radButtons()) {
-                        if (token == TokenType.END) {
-                            token = nextToken();
-                            if (token == TokenType.SEMICOLON) {
-                                System.out.printf(debug ? "\nend widget(%s)" : "", tokens.get(i - 1).lexeme);
-                                return true;
-                            } else
-                                error = "Widget: Group: \"Semicolon\" token not found.";
-                        } else
-                            error += "  (Widget: Group: \"End\" token not found.)";
-                    } else
-                        error += "  (Widget: Group: \"Radio_Buttons\" pattern not found.)";
-                case LABEL:
-                    token = nextToken();
-                    if (token == TokenType.QUOTATION) {
-                        token = nextToken();
-                        if (token == TokenType.STRING) {
-                            JLabel label = new JLabel(getToken());
-                            token = nextToken();
-                            if (token == TokenType.QUOTATION) {
-                                token = nextToken();
-                                if (token == TokenType.SEMICOLON) {
-                                    currentContainer.add(label);
-                                    System.out.printf(debug ? "\nend widget(%s)" : "", tokens.get(i - 1).lexeme);
-                                    return true;
-                                } else
-                                    error = "Widget: \"Semicolon\" token not found.";
-                            } else
-                                error += "  (Widget: \"Quotation\" token not found.)";
-                        } else
-                            error += "  (Widget: \"String\" token not found.)";
-                    } else
-                        error += "  (Widget: \"Quotation\" token not found.)";
-                case PANEL:
-                    System.out.printf(debug ? "\nPanel Starting(%d) on \"%s\"\n" : "", i - 1, tokens.get(i - 1));
-                    token = nextToken();
-                    JPanel panel;
-                    Container parentContainer = panel = new JPanel();
-                    currentContainer.add(panel);
-                    currentContainer = panel;
-                    if (layout()) {
-                        token = nextToken();
-                        if (widgets()) {
-                            currentContainer = parentContainer;
-                            if (token == TokenType.END) {
-                                System.out.printf(debug ? "\nPanel : END found(%d) on \"%s\"\n" : "", i - 1, tokens.get(i - 1));
-                                token = nextToken();
-                                if (token == TokenType.SEMICOLON) {
-                                    System.out.printf(debug ? "\nPanel Complete(%d) on \"%s\"\n" : "", i - 1, tokens.get(i - 1));
-                                    Border border = BorderFactory.createLineBorder(Color.black);
-                                    panel.setSize(500, 500);
-                                    panel.setBorder(border);
-                                    if (panel.getBorder() == null) System.out.printf("\nNo Border!\n");
-
-                                    System.out.printf(debug ? "\nend widget(%s)" : "", tokens.get(i - 1).lexeme);
-                                    return true;
-                                } else
-                                    error = "Widget: Panel: \"Semicolon\" token not found.";
-                            } else
-                                error = "Widget: Panel: \"End\" token not found.";
-                        } else
-                            error += "  Widget: Panel: \"Widget\" pattern not found.";
-                    } else
-                        error += "  (Widget: Panel: \"Layout\" pattern not found.)";
-                case TEXT_FIELD:
-                    token = nextToken();
-                    if (token == TokenType.NUMBER) {
-                        JTextField textField = new JTextField(Integer.parseInt(getToken()));
-                        token = nextToken();
-                        if (token == TokenType.SEMICOLON) {
-                            currentContainer.add(textField);
-                            System.out.printf("\nend widget(%s)", tokens.get(i - 1).lexeme);
-                            return true;
-                        } else
-                            error = "Widget: \"Semicolon\" token not found.";
-                    } else
-                        error += "  (Widget: \"Number\" token not found.)";
-                default:
-                    error += "  Widget: \"Widgets\" pattern not found.";
-                    return false;
-            }
-        }
-
-        private boolean widgets() {
-            boolean flag = false;
-            int temp = i;
-
-            if (widget()) {
-                flag = true;
-                token = nextToken();
-                Container parentContainer = currentContainer;
-                widgets();
-                currentContainer = parentContainer;
-            } else {
-                i = temp;
-            }
-
-            return flag;
-        }
-    }
-}
\ No newline at end of file
+/*
+  Name:  Joseph Julian
+  Project:  Project 1
+  Date:  13 Apr 2021
+  Description:  Parses input file and generates GUI.
+ */
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
+
+
+public class Main {
+    static final boolean debug = false;
+    private static final int CACHE_ENTRIES = 64;
+
+    private LayoutCache cache;
+
+    public static void main(String[] args) {
+        Main test = new Main();
+
+        if (args.length >= 2 && args[0].equals("--cache")) {
+            test.cache = new LayoutCache(new File(args[1]).toPath(), CACHE_ENTRIES);
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        if (args.length == 0) {
+            SwingUtilities.invokeLater(test::selectFile);
+            return;
+        }
+
+        boolean passed = true;
+        if (args[0].equals("--batch")) {
+            passed = test.validateDirectory(args);
+        } else if (args[0].equals("--watch")) {
+            passed = watch(args);
+        } else if (args[0].equals("--compile")) {
+            passed = test.compileFile(args);
+        } else if (args[0].equals("--convert")) {
+            passed = test.convertFile(args);
+        } else if (args[0].equals("--serve")) {
+            passed = serve(args);
+        } else {
+            for (String path : args)
+                passed &= test.validateFile(new File(path));
+        }
+
+        if (test.cache != null)
+            System.out.printf("Cache: %d hits (%d from disk), %d misses, %d evictions\n", test.cache.hits(),
+                    test.cache.diskHits(), test.cache.misses(), test.cache.evictions());
+        if (LayoutMetrics.ENABLED)
+            System.out.println(LayoutMetrics.summary());
+
+        if (!passed)
+            System.exit(1);
+    }
+
+    /**
+     * Prompts user to select existing file to be parsed. Takes file
+     * and passes to lexer and parser classes to analyze and parse.
+     * Runs on the Event Dispatch Thread; the file is parsed on a worker
+     * thread and the window is built back on the Event Dispatch Thread.
+     */
+    private void selectFile() {
+        int option;
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fileChooser.setCurrentDirectory(new File(System.getProperty("user.dir")));
+
+        do {
+            option = fileChooser.showOpenDialog(null);
+        } while (option != JFileChooser.APPROVE_OPTION && option != JFileChooser.CANCEL_OPTION);
+
+        File file = fileChooser.getSelectedFile();
+
+        new SwingWorker<LayoutTree.Window, Void>() {
+            @Override
+            protected LayoutTree.Window doInBackground() {
+                LayoutTree.Window tree = parse(file);
+                if (tree == null)
+                    return null;
+
+                LayoutEvents.Optimize event = new LayoutEvents.Optimize();
+                event.begin();
+                LayoutOptimizer optimizer = new LayoutOptimizer();
+                tree = optimizer.optimize(tree);
+                event.removedPanels = optimizer.removedPanels();
+                event.commit();
+                if (LayoutMetrics.ENABLED)
+                    LayoutMetrics.optimized(optimizer.removedPanels());
+                if (optimizer.removedPanels() > 0)
+                    System.out.printf("Optimizer removed %d panels.\n", optimizer.removedPanels());
+                return tree;
+            }
+
+            @Override
+            protected void done() {
+                LayoutTree.Window tree;
+                try {
+                    tree = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    System.out.println("Error: " + e.getCause());
+                    return;
+                }
+
+                if (tree != null) {
+                    JFrame window = SwingBuilder.buildInBatches(tree);
+                    window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                    window.setLocationRelativeTo(null);
+                    window.setVisible(true);
+                    System.out.println("\n\nFile successfully parsed!");
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Lexes and parses the given file, or takes its tree from the cache when
+     * one was given with <code>--cache</code> and holds the same contents.
+     * A binary layout is read as it is.  Prints the error if the file cannot
+     * be parsed.
+     *
+     * @param file File to be parsed
+     * @return Layout tree, or null if the file is not valid
+     */
+    private LayoutTree.Window parse(File file) {
+        if (LayoutBinary.isBinary(file)) {
+            try {
+                return LayoutBinary.load(file);
+            } catch (IOException e) {
+                System.out.println("Error: File could not be read!");
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: Invalid binary layout: " + e.getMessage());
+            }
+            return null;
+        }
+
+        if (cache == null) {
+            Parser parser = new Parser(new Lexer(file));
+            if (parser.parseFile())
+                return parser.tree;
+
+            System.out.println(parser.errorMessage());
+            return null;
+        }
+
+        byte[] source;
+        try {
+            source = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            System.out.println("Error: File not found!");
+            return null;
+        } catch (IOException e) {
+            System.out.println("Error: File could not be read!");
+            return null;
+        }
+
+        String key = LayoutCache.key(source);
+        LayoutTree.Window tree = cache.get(key);
+        if (tree != null)
+            return tree;
+
+        char[] chars = new String(source, StandardCharsets.UTF_8).toCharArray();
+        Parser parser = new Parser(new Lexer(chars, 0, chars.length));
+        if (!parser.parseFile()) {
+            System.out.println(parser.errorMessage());
+            return null;
+        }
+
+        cache.put(key, parser.tree);
+        return parser.tree;
+    }
+
+    /**
+     * Lexes and parses the given file without creating any Swing objects,
+     * so it can run with <code>-Djava.awt.headless=true</code>.
+     *
+     * @param file File to be validated
+     * @return true if the file is syntactically valid
+     */
+    private boolean validateFile(File file) {
+        boolean parsed = parse(file) != null;
+
+        System.out.printf("%s: %s\n", file, parsed ? "OK" : "FAILED");
+        return parsed;
+    }
+
+    /**
+     * Handles <code>--watch FILE</code>: shows the layout of a file and
+     * updates the window as the file is edited.  See
+     * <code>LayoutPreview</code>.
+     *
+     * @param args Command-line arguments, starting with "--watch"
+     * @return false if the arguments are wrong
+     */
+    private static boolean watch(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: java Main --watch FILE");
+            return false;
+        }
+
+        LayoutPreview.watch(new File(args[1]));
+        return true;
+    }
+
+    /**
+     * Handles <code>--compile FILE CLASS [DIRECTORY]</code>: writes
+     * <code>CLASS.java</code>, whose <code>build()</code> creates the window
+     * of the file without parsing it.  The tree is optimized first, as it is
+     * before the window is shown.
+     *
+     * @param args Command-line arguments, starting with "--compile"
+     * @return true if the file was valid and the class was written
+     */
+    private boolean compileFile(String[] args) {
+        if (args.length != 3 && args.length != 4) {
+            System.out.println("Usage: java Main --compile FILE CLASS [DIRECTORY]");
+            return false;
+        }
+        if (!LayoutCompiler.isClassName(args[2])) {
+            System.out.println("Error: " + args[2] + " cannot be used as the class name!");
+            return false;
+        }
+
+        File file = new File(args[1]);
+        LayoutTree.Window tree = parse(file);
+        if (tree == null)
+            return false;
+
+        String source = LayoutCompiler.compile(new LayoutOptimizer().optimize(tree), args[2], file.getName());
+        File output = new File(args.length == 4 ? args[3] : ".", args[2] + ".java");
+        try {
+            Files.writeString(output.toPath(), source, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.out.println("Error: " + output + " could not be written!");
+            return false;
+        }
+
+        System.out.printf("%s: compiled to %s\n", file, output);
+        return true;
+    }
+
+    /**
+     * Handles <code>--convert INPUT OUTPUT</code>: writes a binary layout
+     * as layout source, and layout source as a binary layout.
+     *
+     * @param args Command-line arguments, starting with "--convert"
+     * @return true if the input was valid and the output was written
+     */
+    private boolean convertFile(String[] args) {
+        if (args.length != 3) {
+            System.out.println("Usage: java Main --convert INPUT OUTPUT");
+            return false;
+        }
+
+        File input = new File(args[1]);
+        File output = new File(args[2]);
+        boolean binary = LayoutBinary.isBinary(input);
+        LayoutTree.Window tree = parse(input);
+        if (tree == null)
+            return false;
+
+        try {
+            if (binary)
+                Files.writeString(output.toPath(), LayoutPrinter.print(tree), StandardCharsets.UTF_8);
+            else
+                Files.write(output.toPath(), LayoutBinary.write(tree));
+        } catch (IOException e) {
+            System.out.println("Error: " + output + " could not be written!");
+            return false;
+        }
+
+        System.out.printf("%s: converted to %s %s\n", input, binary ? "source" : "binary", output);
+        return true;
+    }
+
+    /**
+     * Handles <code>--serve [--port N] [--threads N] [--root DIRECTORY]</code>:
+     * answers validation requests as JSON lines on standard input and output,
+     * or on a loopback socket when a port is given.  Request paths are
+     * confined to the root, the working directory unless given.  See
+     * <code>LayoutServer</code>.
+     *
+     * @param args Command-line arguments, starting with "--serve"
+     * @return false if the arguments are wrong or the server cannot start
+     */
+    private static boolean serve(String[] args) {
+        int port = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File root = new File(System.getProperty("user.dir"));
+        for (int x = 1; x < args.length; x += 2) {
+            if (x + 1 < args.length && args[x].equals("--port")) {
+                port = Integer.parseInt(args[x + 1]);
+            } else if (x + 1 < args.length && args[x].equals("--threads")) {
+                threads = Integer.parseInt(args[x + 1]);
+            } else if (x + 1 < args.length && args[x].equals("--root")) {
+                root = new File(args[x + 1]);
+            } else {
+                System.out.println("Usage: java Main --serve [--port N] [--threads N] [--root DIRECTORY]");
+                return false;
+            }
+        }
+
+        LayoutServer server;
+        try {
+            server = new LayoutServer(threads, root.toPath());
+        } catch (IOException e) {
+            System.out.println("Error: " + root + " is not a directory!");
+            return false;
+        }
+
+        try {
+            if (port < 0)
+                server.serveStandardStreams();
+            else
+                server.serveSocket(port);
+        } catch (IOException e) {
+            System.out.println("Error: Server stopped: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Handles <code>--batch DIRECTORY [--threads N]</code>: validates every
+     * file under the directory in parallel and prints one line per file.
+     *
+     * @param args Command-line arguments, starting with "--batch"
+     * @return true if every file is syntactically valid
+     */
+    private boolean validateDirectory(String[] args) {
+        if (args.length != 2 && !(args.length == 4 && args[2].equals("--threads"))) {
+            System.out.println("Usage: java Main --batch DIRECTORY [--threads N]");
+            return false;
+        }
+
+        int threads = args.length == 4 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        List<BatchValidator.Result> results;
+        try {
+            results = BatchValidator.validate(new File(args[1]).toPath(), threads);
+        } catch (IOException e) {
+            System.out.println("Error: Directory could not be read!");
+            return false;
+        }
+
+        int failed = 0;
+        for (BatchValidator.Result result : results) {
+            if (result.passed()) {
+                System.out.printf("%s: OK\n", result.file());
+            } else {
+                failed++;
+                if (result.diagnostics().isEmpty())
+                    System.out.printf("%s: FAILED: %s\n", result.file(), result.error());
+                for (Diagnostic diagnostic : result.diagnostics())
+                    System.out.printf("%s:%d:%d: %s\n", result.file(), diagnostic.line(), diagnostic.column(),
+                            diagnostic.message());
+            }
+        }
+
+        System.out.printf("\n%d files, %d passed, %d failed\n", results.size(), results.size() - failed, failed);
+        return failed == 0;
+    }
+
+    enum TokenType {
+        NOT_FOUND, SEMICOLON, COMMA, STRING, WIDGET, END, WINDOW,
+        LAYOUT, FLOW, BUTTON, LABEL, PANEL, TEXT_FIELD, GRID, GROUP,
+        RADIO, QUOTATION, OPEN_PARENTHESIS, CLOSE_PARENTHESIS, COLON,
+        PERIOD, NUMBER, END_OF_FILE
+    }
+
+    enum Status {IN_PARENTHESIS, IN_QUOTATION, DEFAULT}
+
+
+    /**
+     * Pull-based lexer.  Lines are read and analyzed only when the parser
+     * asks for a token that has not been produced yet, so only the tokens
+     * the parser may still backtrack over are held in memory.
+     * <p>
+     * The file is read into a reusable <code>char[]</code> window.  Lines and
+     * lexemes are handled as (offset, length) slices of that window, and
+     * characters are classified through a 128-entry table, so no object is
+     * created per character.  Tokens go into a <code>TokenTable</code>.
+     * <p>
+     * A file of at least <code>PARALLEL_SIZE</code> bytes is instead split
+     * into chunks of whole lines that are lexed ahead on a fork-join pool and
+     * merged in order, with the same tokens, lines and columns.
+     */
+    static class Lexer {
+        static final byte SKIP = 0;
+        static final byte WORD = 1;
+        static final byte PUNCTUATION = 2;
+        private static final byte[] CLASSES = new byte[128];
+        private static final TokenType[] PUNCTUATION_TYPES = new TokenType[128];
+
+        private static final String[] KEYWORDS = {
+                "Button", "End", "Flow", "Grid", "Group", "Label",
+                "Layout", "Panel", "Radio", "Textfield", "Window"
+        };
+        private static final TokenType[] KEYWORD_TYPES = {
+                TokenType.BUTTON, TokenType.END, TokenType.FLOW, TokenType.GRID, TokenType.GROUP, TokenType.LABEL,
+                TokenType.LAYOUT, TokenType.PANEL, TokenType.RADIO, TokenType.TEXT_FIELD, TokenType.WINDOW
+        };
+        private static final char[][] KEYWORD_TABLE = new char[16][];
+        private static final TokenType[] KEYWORD_TABLE_TYPES = new TokenType[16];
+
+        static {
+            for (char c = '0'; c <= '9'; c++)
+                CLASSES[c] = WORD;
+            for (char c = 'A'; c <= 'Z'; c++) {
+                CLASSES[c] = WORD;
+                CLASSES[c + ('a' - 'A')] = WORD;
+            }
+
+            String punctuations = "\"(),:;.";
+            TokenType[] types = {
+                    TokenType.QUOTATION, TokenType.OPEN_PARENTHESIS, TokenType.CLOSE_PARENTHESIS,
+                    TokenType.COMMA, TokenType.COLON, TokenType.SEMICOLON, TokenType.PERIOD
+            };
+            for (int x = 0; x < punctuations.length(); x++) {
+                char c = punctuations.charAt(x);
+                CLASSES[c] = PUNCTUATION;
+                PUNCTUATION_TYPES[c] = types[x];
+            }
+
+            for (int x = 0; x < KEYWORDS.length; x++) {
+                char[] keyword = KEYWORDS[x].toCharArray();
+                int slot = keywordHash(keyword, 0, keyword.length);
+                if (KEYWORD_TABLE[slot] != null)
+                    throw new AssertionError("Keyword hash collision: " + KEYWORDS[x]);
+
+                KEYWORD_TABLE[slot] = keyword;
+                KEYWORD_TABLE_TYPES[slot] = KEYWORD_TYPES[x];
+            }
+        }
+
+        /**
+         * Bytes mapped at a time.  Files larger than this are mapped region
+         * by region as the window moves through them.
+         */
+        private static final long REGION_SIZE = 1L << 28;
+        /**
+         * Files at least this large are lexed in parallel.
+         */
+        static final long PARALLEL_SIZE = Long.getLong("layout.parallelSize", 64L << 20);
+        /**
+         * Bytes per chunk of a file lexed in parallel, and the number of
+         * chunks lexed ahead of the parser.
+         */
+        private static final int CHUNK_SIZE = Integer.getInteger("layout.chunkSize", 8 << 20);
+        private static final int CHUNKS_AHEAD = 2 * Runtime.getRuntime().availableProcessors();
+
+        private final TokenTable tokens;
+        private File file;
+        private FileChannel channel;
+        private MappedByteBuffer region;
+        private long regionStart;
+        /**
+         * Size of the input: bytes of a file, or characters of an array.
+         */
+        private long size;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private String error;
+        private boolean opened;
+        private boolean endOfInput;
+        private boolean endOfTokens;
+        private char[] buffer;
+        private int offset;
+        private int position;
+        private int limit;
+        private int lineStart;
+        private int lineEnd;
+        /**
+         * Number of the current line, counting from 1, and the character that
+         * ended the line before it.
+         */
+        private int line;
+        private char separator;
+        private TokenType lastToken;
+        private Status status = Status.DEFAULT;
+        /**
+         * Chunks forked and not yet merged, and the byte offset at which the
+         * next one starts.  Null unless the file is lexed in parallel.
+         */
+        private ArrayDeque<Chunk> chunks;
+        private long nextChunk;
+
+        /**
+         * Initializes private data members.  The input file is opened on the
+         * first call to <code>next()</code>.
+         *
+         * @param _file User-selected file
+         */
+        public Lexer(File _file) {
+            if (_file != null) {
+                file = _file;
+            }
+
+            tokens = new TokenTable();
+            buffer = new char[1 << 16];
+        }
+
+        /**
+         * Lexes <code>chars[start, end)</code> instead of a file.  The array is
+         * used in place, and token positions are offsets into it.
+         *
+         * @param chars Source text
+         * @param start Offset of the first character to lex
+         * @param end   Offset just past the last character to lex
+         */
+        public Lexer(char[] chars, int start, int end) {
+            tokens = new TokenTable();
+            reset(chars, start, end);
+        }
+
+        /**
+         * Makes the lexer ready to lex <code>chars[start, end)</code> as if
+         * it had just been made for it.  Its token table, with the arrays
+         * and string pool it has grown, is kept, so a long-running caller
+         * can keep one lexer per thread.
+         *
+         * @param chars Source text
+         * @param start Offset of the first character to lex
+         * @param end   Offset just past the last character to lex
+         */
+        void reset(char[] chars, int start, int end) {
+            closeFile();
+            tokens.clear();
+            file = null;
+            chunks = null;
+            nextChunk = 0;
+            error = null;
+            endOfTokens = false;
+            offset = 0;
+            lineStart = 0;
+            lineEnd = 0;
+            line = 0;
+            separator = 0;
+            lastToken = null;
+            status = Status.DEFAULT;
+
+            buffer = chars;
+            position = start;
+            limit = end;
+            size = end - start;
+            opened = true;
+            endOfInput = true;
+        }
+
+        /**
+         * Perfect hash of the eleven keywords into a 16-slot table.  Any other
+         * word either lands on an empty slot or fails the comparison in
+         * <code>testToken()</code>.
+         */
+        private static int keywordHash(char[] chars, int start, int end) {
+            return (chars[start] + 4 * chars[end - 1] + (end - start)) & 15;
+        }
+
+        static byte classOf(char character) {
+            if (character < 128)
+                return CLASSES[character];
+
+            return Character.isLetterOrDigit(character) ? WORD : SKIP;
+        }
+
+        /**
+         * Returns the absolute index one past the last token the parser may
+         * read.  A string token is held back until its closing quotation has
+         * been seen, since later words are still appended to it.
+         */
+        private int available() {
+            if (!endOfTokens && status == Status.IN_QUOTATION && lastToken == TokenType.STRING)
+                return tokens.end() - 1;
+
+            return tokens.end();
+        }
+
+        /**
+         * Lexes the whole input without a parser, releasing tokens as soon
+         * as they are complete.  Used to measure the lexer on its own.
+         *
+         * @return Number of tokens in the input
+         */
+        int analyzeFile() {
+            try {
+                while (advance())
+                    tokens.release(available());
+                return tokens.end();
+            } finally {
+                closeFile();
+            }
+        }
+
+        /**
+         * Analyzes the next line of the file that is not empty or a comment.
+         *
+         * @return false once the file is exhausted
+         */
+        private boolean advance() {
+            if (!opened) {
+                opened = true;
+                endOfInput = !openFile(file);
+            }
+            if (chunks != null)
+                return mergeChunk();
+
+            while (nextLine()) {
+                if (!(lineEnd == lineStart || buffer[lineStart] == '/')) {
+                    analyzeLine(lineStart, lineEnd);
+                    return true;
+                }
+            }
+
+            endOfTokens = true;
+            return false;
+        }
+
+        /**
+         * Finds the next line in the window, refilling it from the file as
+         * needed, and leaves its bounds in <code>lineStart</code> and
+         * <code>lineEnd</code>.  Lines end at the same characters Scanner
+         * treats as line separators; a "\r\n" pair yields an extra empty line,
+         * which is skipped like any other but not counted in <code>line</code>.
+         *
+         * @return false once the input is exhausted
+         */
+        private boolean nextLine() {
+            int x = position;
+
+            while (true) {
+                while (x < limit && !isLineSeparator(buffer[x]))
+                    x++;
+
+                if (x < limit || endOfInput)
+                    break;
+
+                x -= position;
+                fill();
+                x += position;
+            }
+
+            if (position == limit) {
+                closeFile();
+                return false;
+            }
+
+            if (separator != '\r' || x != position || buffer[x] != '\n')
+                line++;
+            separator = x < limit ? buffer[x] : 0;
+            lineStart = position;
+            lineEnd = x;
+            position = x < limit ? x + 1 : x;
+            return true;
+        }
+
+        private static boolean isLineSeparator(char character) {
+            return character == '\n' || character == '\r'
+                    || character == '\u2028' || character == '\u2029' || character == '\u0085';
+        }
+
+        /**
+         * Moves the unread part of the window to the front, grows the window
+         * if a single line fills it, and decodes more characters straight from
+         * the mapped file.  A UTF-8 sequence cut off at the end of a region is
+         * left undecoded and picked up again at the start of the next one.
+         */
+        private void fill() {
+            int remaining = limit - position;
+            if (remaining == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+            offset += position;
+            position = 0;
+            limit = remaining;
+
+            CharBuffer target = CharBuffer.wrap(buffer, limit, buffer.length - limit);
+            try {
+                while (true) {
+                    boolean lastRegion = regionStart + region.limit() == size;
+                    decoder.decode(region, target, lastRegion);
+
+                    if (lastRegion && !region.hasRemaining()) {
+                        decoder.flush(target);
+                        endOfInput = true;
+                        break;
+                    } else if (target.position() > limit) {
+                        break;
+                    }
+
+                    map(regionStart + region.position());
+                }
+            } catch (IOException e) {
+                error = "File could not be read!";
+                endOfInput = true;
+            }
+
+            limit = target.position();
+        }
+
+        /**
+         * Maps the next region of the file, starting at the given byte offset.
+         */
+        private void map(long start) throws IOException {
+            regionStart = start;
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+        }
+
+        /**
+         * Releases the file.  Called once the parser is done with the lexer,
+         * which may be before the end of the file was reached.
+         */
+        private void closeFile() {
+            if (chunks != null) {
+                for (Chunk chunk : chunks)
+                    chunk.cancel(false);
+                chunks.clear();
+            }
+            if (channel == null)
+                return;
+
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+            region = null;
+        }
+
+        /**
+         * Forks chunks until <code>CHUNKS_AHEAD</code> are in flight or the
+         * file is used up.  Each chunk ends just after a '\n', which is never
+         * part of a longer UTF-8 sequence, so it decodes on its own to whole
+         * lines.  The bytes are mapped here, so closing the file does not
+         * affect chunks still running.
+         */
+        private void forkChunks() throws IOException {
+            while (chunks.size() < CHUNKS_AHEAD && nextChunk < size) {
+                long start = nextChunk;
+                nextChunk = afterNewline(Math.min(start + CHUNK_SIZE, size) - 1);
+                Chunk chunk = new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, start, nextChunk - start));
+                chunk.fork();
+                chunks.add(chunk);
+            }
+        }
+
+        /**
+         * Byte offset just past the first '\n' at or after <code>from</code>,
+         * or the size of the file if there is none.
+         */
+        private long afterNewline(long from) throws IOException {
+            while (from < size) {
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from,
+                        Math.min(1 << 16, size - from));
+                for (int x = 0; x < bytes.limit(); x++) {
+                    if (bytes.get(x) == '\n')
+                        return from + x + 1;
+                }
+                from += bytes.limit();
+            }
+            return size;
+        }
+
+        /**
+         * Adds the tokens of the next chunk to <code>tokens</code> and forks
+         * another chunk in its place.  A chunk is lexed as if it began
+         * outside any quotation or parenthesis; if the chunks before it end
+         * inside one, it is lexed again here from that state.  Offsets are
+         * shifted by the characters of the chunks before it, and lines by
+         * their lines, since a chunk counts both from its own start.
+         *
+         * @return false once every chunk has been merged
+         */
+        private boolean mergeChunk() {
+            Chunk chunk = chunks.poll();
+            if (chunk == null) {
+                endOfTokens = true;
+                return false;
+            }
+
+            try {
+                forkChunks();
+            } catch (IOException e) {
+                error = "File could not be read!";
+                closeFile();
+                endOfTokens = true;
+                return false;
+            }
+
+            chunk.join();
+            if (status != Status.DEFAULT)
+                chunk.lex(status, lastToken);
+
+            Lexer lexer = chunk.lexer;
+            tokens.addAll(lexer.tokens, line, offset, status == Status.IN_QUOTATION && lastToken == TokenType.STRING);
+            line += lexer.line;
+            offset += chunk.length;
+            status = lexer.status;
+            lastToken = lexer.lastToken;
+            return true;
+        }
+
+        /**
+         * Starts lexing in the state the text before the input leaves off
+         * in.  A string still open gets an empty token for later words to be
+         * appended to.
+         */
+        private void resume(Status _status, TokenType _lastToken) {
+            status = _status;
+            lastToken = _lastToken;
+            if (status == Status.IN_QUOTATION && lastToken == TokenType.STRING)
+                add(TokenType.STRING, position, position);
+        }
+
+        /**
+         * Adds given token to <code>tokens</code>, after checking some contextual
+         * information.  Even if the lexeme is marked as a special token, verify
+         * that it's not in a parenthesis (a number literal) or in a quotation
+         * (a string literal):
+         *
+         * @param token -
+         * @param start Offset of the lexeme in the window
+         * @param end   Offset just past the lexeme
+         */
+        private void addToken(TokenType token, int start, int end) {
+            if (status == Status.IN_PARENTHESIS) {
+                if (token == TokenType.CLOSE_PARENTHESIS) {
+                    lastToken = token;
+                    add(token, start, end);
+                    status = Status.DEFAULT;
+                    return;
+                }
+
+                lastToken = token;
+                add(token, start, end);
+                return;
+            } else if (status == Status.IN_QUOTATION) {
+                if (token == TokenType.QUOTATION) {
+                    if (lastToken == TokenType.QUOTATION) {
+                        add(TokenType.STRING, start, start);
+                        add(token, start, end);
+                        status = Status.DEFAULT;
+                        return;
+                    }
+
+                    lastToken = token;
+                    add(token, start, end);
+                    status = Status.DEFAULT;
+                    return;
+                }
+
+                if (lastToken == TokenType.STRING) {
+                    tokens.append(buffer, start, end);
+                    return;
+                }
+
+                token = TokenType.STRING;
+                lastToken = token;
+                add(token, start, end);
+                return;
+            } else if (token == TokenType.QUOTATION) {
+                lastToken = token;
+                add(token, start, end);
+                status = Status.IN_QUOTATION;
+                return;
+            } else if (token == TokenType.OPEN_PARENTHESIS) {
+                lastToken = token;
+                add(token, start, end);
+                status = Status.IN_PARENTHESIS;
+                return;
+            }
+
+            lastToken = token;
+            add(token, start, end);
+        }
+
+        /**
+         * Adds a token of the current line to <code>tokens</code>, with its
+         * line and column.
+         */
+        private void add(TokenType type, int start, int end) {
+            tokens.add(type, buffer, start, end, offset + start, line, start - lineStart + 1);
+        }
+
+        /**
+         * Analyzes the characters of one line into tokens.
+         *
+         * @param start Offset of the first character of the line in the window
+         * @param end   Offset just past the last character of the line
+         */
+        private void analyzeLine(int start, int end) {
+            char[] chars = buffer;
+            int x = start;
+
+            while (x < end) {
+                char character = chars[x];
+                byte characterClass = classOf(character);
+
+                if (characterClass == WORD) {
+                    int wordStart = x++;
+                    while (x < end && classOf(chars[x]) == WORD)
+                        x++;
+
+                    addToken(testToken(chars, wordStart, x), wordStart, x);
+                } else if (characterClass == PUNCTUATION) {
+                    addToken(PUNCTUATION_TYPES[character], x, x + 1);
+                    x++;
+                } else {
+                    x++;
+                }
+            }
+        }
+
+        /**
+         * Called by next() when the first token is requested.  Opens the file
+         * and memory-maps its first region.
+         *
+         * @param file File to be opened
+         * @return false if the file cannot be opened
+         */
+        private boolean openFile(File file) {
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                size = channel.size();
+                if (size >= PARALLEL_SIZE) {
+                    chunks = new ArrayDeque<>();
+                    forkChunks();
+                } else {
+                    map(0);
+                }
+                return true;
+            } catch (NoSuchFileException e) {
+                error = "File not found!";
+            } catch (IOException e) {
+                error = "File could not be read!";
+            }
+
+            closeFile();
+            return false;
+        }
+
+        /**
+         * Tests the word <code>chars[start, end)</code> for token type.
+         *
+         * @param chars Character window holding the word
+         * @param start Offset of the first character
+         * @param end   Offset just past the last character
+         * @return TokenType of the word
+         */
+        private TokenType testToken(char[] chars, int start, int end) {
+            if (status == Status.IN_QUOTATION) {
+                return TokenType.STRING;
+            } else if (status == Status.IN_PARENTHESIS) {
+                for (int x = start; x < end; x++) {
+                    if (!Character.isDigit(chars[x]))
+                        return TokenType.NOT_FOUND;
+                }
+
+                return TokenType.NUMBER;
+            }
+
+            return wordType(chars, start, end);
+        }
+
+        /**
+         * Type of a word outside quotations and parentheses: a keyword, or
+         * else a number.
+         */
+        private static TokenType wordType(char[] chars, int start, int end) {
+            int slot = keywordHash(chars, start, end);
+            char[] keyword = KEYWORD_TABLE[slot];
+            if (keyword != null && Arrays.equals(keyword, 0, keyword.length, chars, start, end))
+                return KEYWORD_TABLE_TYPES[slot];
+
+            return TokenType.NUMBER;
+        }
+
+        /**
+         * Type the lexer gives a lexeme that is a whole word or a single
+         * punctuation character, outside quotations and parentheses.
+         */
+        static TokenType typeOf(String lexeme) {
+            char first = lexeme.charAt(0);
+            if (lexeme.length() == 1 && classOf(first) == PUNCTUATION)
+                return PUNCTUATION_TYPES[first];
+
+            return wordType(lexeme.toCharArray(), 0, lexeme.length());
+        }
+
+        /**
+         * Whole lines of a large file, decoded and lexed on a fork-join pool.
+         * The characters are kept until the chunk is merged, in case it has to
+         * be lexed again.
+         */
+        @SuppressWarnings("serial")
+        private static final class Chunk extends RecursiveAction {
+            private final MappedByteBuffer bytes;
+            private char[] chars;
+            private int length;
+            private Lexer lexer;
+
+            Chunk(MappedByteBuffer _bytes) {
+                bytes = _bytes;
+            }
+
+            @Override
+            protected void compute() {
+                CharBuffer decoded;
+                try {
+                    decoded = StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                            .decode(bytes);
+                } catch (CharacterCodingException e) {
+                    throw new AssertionError("Malformed input is replaced", e);
+                }
+
+                chars = decoded.array();
+                length = decoded.limit();
+                lex(Status.DEFAULT, null);
+            }
+
+            /**
+             * Lexes the chunk from the state the lines before it end in.
+             */
+            void lex(Status status, TokenType lastToken) {
+                lexer = new Lexer(chars, 0, length);
+                lexer.resume(status, lastToken);
+                while (lexer.advance()) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Token storage as parallel primitive arrays: one byte for the type, two
+     * ints bounding the lexeme and one for the source offset, 13 bytes per
+     * token.  Only numbers, string literals and unrecognized words carry
+     * text; it is copied once into a shared char arena and turned into a
+     * <code>String</code> only when <code>lexeme()</code> is called.  Every
+     * other type has a fixed lexeme.
+     * <p>
+     * Lines are stored once for each line that holds a token, as its number
+     * and the offset it starts at, and the column of a token is its distance
+     * from the start of its line.  A line usually holds several tokens, so
+     * this costs less than a line and column per token.
+     * <p>
+     * Tokens are addressed by absolute index.  Tokens before the index given
+     * to <code>release()</code> may be dropped to make room, which keeps the
+     * table bounded while the parser streams through a file.
+     */
+    private static class TokenTable {
+        private static final TokenType[] TYPES = TokenType.values();
+        private static final String[] LEXEMES = new String[TYPES.length];
+        /**
+         * Slots in <code>pool</code>, and the longest lexeme pooled.  Longer
+         * text is seldom repeated.
+         */
+        private static final int POOL_SIZE = 1 << 12;
+        private static final int POOL_LENGTH = 64;
+
+        static {
+            String[][] fixed = {
+                    {"SEMICOLON", ";"}, {"COMMA", ","}, {"END", "End"}, {"WINDOW", "Window"},
+                    {"LAYOUT", "Layout"}, {"FLOW", "Flow"}, {"BUTTON", "Button"}, {"LABEL", "Label"},
+                    {"PANEL", "Panel"}, {"TEXT_FIELD", "Textfield"}, {"GRID", "Grid"}, {"GROUP", "Group"},
+                    {"RADIO", "Radio"}, {"QUOTATION", "\""}, {"OPEN_PARENTHESIS", "("},
+                    {"CLOSE_PARENTHESIS", ")"}, {"COLON", ":"}, {"PERIOD", "."}
+            };
+            for (String[] entry : fixed)
+                LEXEMES[TokenType.valueOf(entry[0]).ordinal()] = entry[1];
+        }
+
+        private byte[] types = new byte[1024];
+        private int[] starts = new int[1024];
+        private int[] ends = new int[1024];
+        private int[] positions = new int[1024];
+        /**
+         * Number and start offset of each line that holds a token, in order.
+         */
+        private int[] lineNumbers = new int[256];
+        private int[] lineStarts = new int[256];
+        private char[] text = new char[4096];
+        private int base;
+        private int count;
+        private int lineCount;
+        private int textLength;
+        private int released;
+        /**
+         * Strings already returned by <code>lexeme()</code>, by hash of their
+         * characters.  A collision replaces the older string, so the pool
+         * never grows, and every repeat of a label that stays in its slot
+         * shares one <code>String</code>.
+         */
+        private final String[] pool = new String[POOL_SIZE];
+
+        /**
+         * Absolute index one past the last token added.
+         */
+        int end() {
+            return base + count;
+        }
+
+        TokenType type(int index) {
+            return TYPES[types[index - base]];
+        }
+
+        /**
+         * Offset of the first character of the token in the source.
+         */
+        int position(int index) {
+            return positions[index - base];
+        }
+
+        /**
+         * Line of the token, counting from 1.
+         */
+        int line(int index) {
+            return lineNumbers[lineOf(index - base)];
+        }
+
+        /**
+         * Column of the first character of the token, counting from 1.
+         */
+        int column(int index) {
+            int x = index - base;
+            return positions[x] - lineStarts[lineOf(x)] + 1;
+        }
+
+        /**
+         * Index in <code>lineStarts</code> of the line holding the token at
+         * <code>x</code>: the last line starting at or before it.
+         */
+        private int lineOf(int x) {
+            int line = Arrays.binarySearch(lineStarts, 0, lineCount, positions[x]);
+            return line >= 0 ? line : -line - 2;
+        }
+
+        /**
+         * Returns the lexeme of the token.  Fixed lexemes are constants, and
+         * text is looked up in <code>pool</code> before a String is created
+         * for it.
+         */
+        String lexeme(int index) {
+            int x = index - base;
+            String lexeme = LEXEMES[types[x]];
+            if (lexeme != null)
+                return lexeme;
+
+            int start = starts[x];
+            int length = ends[x] - start;
+            if (length > POOL_LENGTH)
+                return new String(text, start, length);
+
+            int hash = 0;
+            for (int y = start; y < start + length; y++)
+                hash = 31 * hash + text[y];
+            int slot = (hash ^ hash >>> 16) & (POOL_SIZE - 1);
+
+            String pooled = pool[slot];
+            if (pooled != null && pooled.length() == length) {
+                int y = 0;
+                while (y < length && pooled.charAt(y) == text[start + y])
+                    y++;
+                if (y == length)
+                    return pooled;
+            }
+
+            pooled = new String(text, start, length);
+            pool[slot] = pooled;
+            return pooled;
+        }
+
+        /**
+         * Adds a token whose lexeme is <code>chars[start, end)</code>.  The
+         * characters are only copied if the type has no fixed lexeme.
+         */
+        void add(TokenType type, char[] chars, int start, int end, int position, int line, int column) {
+            boolean hasText = LEXEMES[type.ordinal()] == null;
+            if (count == types.length)
+                reserveTokens(1);
+            if (hasText)
+                reserveText(end - start);
+
+            if (lineCount == 0 || lineNumbers[lineCount - 1] != line)
+                addLine(line, position - column + 1);
+            types[count] = (byte) type.ordinal();
+            positions[count] = position;
+            starts[count] = textLength;
+            if (hasText) {
+                System.arraycopy(chars, start, text, textLength, end - start);
+                textLength += end - start;
+            }
+            ends[count] = textLength;
+            count++;
+        }
+
+        /**
+         * Appends a space and <code>chars[start, end)</code> to the lexeme of
+         * the last token, which must be the last token holding text.
+         */
+        void append(char[] chars, int start, int end) {
+            reserveText(end - start + 1);
+            text[textLength++] = ' ';
+            System.arraycopy(chars, start, text, textLength, end - start);
+            textLength += end - start;
+            ends[count - 1] = textLength;
+        }
+
+        /**
+         * Adds every token of <code>chunk</code>, the table of a later part of
+         * the same source, with its lines and positions moved by the given
+         * amounts.  If <code>continued</code>, the first token of the chunk
+         * holds the rest of the string that is the last token here, and only
+         * its text is added.
+         */
+        void addAll(TokenTable chunk, int lineBase, int positionBase, boolean continued) {
+            int first = 0;
+            if (continued) {
+                if (chunk.ends[0] > chunk.starts[0])
+                    append(chunk.text, chunk.starts[0] + 1, chunk.ends[0]);
+                first = 1;
+            }
+
+            int added = chunk.count - first;
+            if (added <= 0)
+                return;
+
+            int textStart = chunk.starts[first];
+            reserveTokens(added);
+            reserveText(chunk.textLength - textStart);
+            int shift = textLength - textStart;
+            System.arraycopy(chunk.types, first, types, count, added);
+            for (int x = 0; x < added; x++) {
+                starts[count + x] = chunk.starts[first + x] + shift;
+                ends[count + x] = chunk.ends[first + x] + shift;
+                positions[count + x] = chunk.positions[first + x] + positionBase;
+            }
+            for (int x = 0; x < chunk.lineCount; x++) {
+                int line = chunk.lineNumbers[x] + lineBase;
+                if (lineCount == 0 || lineNumbers[lineCount - 1] != line)
+                    addLine(line, chunk.lineStarts[x] + positionBase);
+            }
+            System.arraycopy(chunk.text, textStart, text, textLength, chunk.textLength - textStart);
+            textLength += chunk.textLength - textStart;
+            count += added;
+        }
+
+        /**
+         * Drops every token, keeping the arrays and the string pool.
+         */
+        void clear() {
+            base = 0;
+            count = 0;
+            lineCount = 0;
+            textLength = 0;
+            released = 0;
+        }
+
+        /**
+         * Allows tokens before <code>index</code> to be dropped.
+         */
+        void release(int index) {
+            if (index > released)
+                released = index;
+        }
+
+        private void addLine(int line, int start) {
+            if (lineCount == lineNumbers.length) {
+                lineNumbers = Arrays.copyOf(lineNumbers, lineCount * 2);
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+            }
+            lineNumbers[lineCount] = line;
+            lineStarts[lineCount] = start;
+            lineCount++;
+        }
+
+        private void reserveText(int length) {
+            if (textLength + length > text.length) {
+                compact();
+                if (textLength + length > text.length)
+                    text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+            }
+        }
+
+        private void reserveTokens(int tokens) {
+            compact();
+            if (count + tokens > types.length) {
+                int length = Math.max(types.length * 2, count + tokens);
+                types = Arrays.copyOf(types, length);
+                starts = Arrays.copyOf(starts, length);
+                ends = Arrays.copyOf(ends, length);
+                positions = Arrays.copyOf(positions, length);
+            }
+        }
+
+        /**
+         * Drops released tokens and their text from the front of the table.
+         */
+        private void compact() {
+            int drop = Math.min(released - base, count);
+            if (drop <= 0)
+                return;
+
+            int textDrop = drop < count ? starts[drop] : textLength;
+            int lineDrop = drop < count ? lineOf(drop) : lineCount;
+            for (int x = drop; x < count; x++) {
+                starts[x - drop] = starts[x] - textDrop;
+                ends[x - drop] = ends[x] - textDrop;
+            }
+            System.arraycopy(types, drop, types, 0, count - drop);
+            System.arraycopy(positions, drop, positions, 0, count - drop);
+            System.arraycopy(lineNumbers, lineDrop, lineNumbers, 0, lineCount - lineDrop);
+            System.arraycopy(lineStarts, lineDrop, lineStarts, 0, lineCount - lineDrop);
+            System.arraycopy(text, textDrop, text, 0, textLength - textDrop);
+
+            base += drop;
+            count -= drop;
+            lineCount -= lineDrop;
+            textLength -= textDrop;
+        }
+
+        String toString(int index) {
+            return String.format("[%s, \"%s\"]", type(index), lexeme(index));
+        }
+    }
+
+
+    /**
+     * Predictive LL(1) parser over the tokens of one lexer.  Every choice is
+     * made from the current token alone, using the FIRST and FOLLOW sets
+     * below, so no token is read twice and parsing is linear in the size of
+     * the file.  Each instance holds its own state, so separate files can be
+     * parsed concurrently.
+     * <pre>
+     * gui           : Window STRING ( NUMBER , NUMBER ) layout widgets End .
+     * layout        : Layout layout_type :
+     * layout_type   : Flow | Grid ( NUMBER , NUMBER [, NUMBER , NUMBER] )
+     * widgets       : widget { widget }
+     * widget        : Button STRING ; | Group radio_buttons End ; | Label STRING ;
+     *               | Panel layout widgets End ; | Textfield NUMBER ;
+     * radio_buttons : radio_button { radio_button }
+     * radio_button  : Radio STRING ;
+     * </pre>
+     * where STRING stands for <code>" STRING "</code>.
+     */
+    static class Parser {
+        /**
+         * FIRST(widget): tokens that start a widget.
+         */
+        static final EnumSet<TokenType> FIRST_WIDGET = EnumSet.of(
+                TokenType.BUTTON, TokenType.GROUP, TokenType.LABEL, TokenType.PANEL, TokenType.TEXT_FIELD);
+        /**
+         * FIRST(radio_button).
+         */
+        static final EnumSet<TokenType> FIRST_RADIO_BUTTON = EnumSet.of(TokenType.RADIO);
+        /**
+         * FIRST(layout_type).
+         */
+        static final EnumSet<TokenType> FIRST_LAYOUT_TYPE = EnumSet.of(TokenType.FLOW, TokenType.GRID);
+        /**
+         * FOLLOW(widgets) and FOLLOW(radio_buttons): both lists are closed by End.
+         */
+        static final EnumSet<TokenType> FOLLOW_LIST = EnumSet.of(TokenType.END);
+        /**
+         * Tokens after the column count of a grid: the gaps or the closing parenthesis.
+         */
+        static final EnumSet<TokenType> GRID_CONTINUATION = EnumSet.of(TokenType.COMMA, TokenType.CLOSE_PARENTHESIS);
+        /**
+         * Default limit on panel nesting, set with <code>-Dlayout.maxDepth</code>.
+         */
+        static final int MAX_DEPTH = Integer.getInteger("layout.maxDepth", 100_000);
+        /**
+         * Errors after which <code>parseFile()</code> gives up.
+         */
+        static final int MAX_DIAGNOSTICS = 1000;
+
+        /**
+         * A window or panel whose widgets are still being built, and the
+         * offset of its first token.
+         */
+        private static final class Container {
+            final int start;
+            LayoutTree.Layout layout = LayoutTree.Layout.FLOW;
+            final List<LayoutTree.Widget> widgets = new ArrayList<>();
+
+            Container(int _start) {
+                start = _start;
+            }
+        }
+
+        final Lexer lexer;
+        final TokenTable tokens;
+        LayoutTree.Window tree;
+        /**
+         * Receives each construct <code>parseFile()</code> recognizes.  Left
+         * null, the parser builds <code>tree</code>; set, no tree is built.
+         */
+        LayoutListener listener;
+        /**
+         * Source span {start, end} of every parsed panel, from the "Panel"
+         * keyword to just past its closing ';'.  Only recorded when set to a
+         * map before parsing.
+         */
+        Map<LayoutTree.Panel, int[]> panelSpans;
+        /**
+         * Every widget parsed so far, so a repeated subtree is built once and
+         * shared by all its copies.
+         */
+        final LayoutTemplates templates = new LayoutTemplates();
+        int maxDepth = MAX_DEPTH;
+        /**
+         * Every syntax error found, in source order.  <code>parseFile()</code>
+         * recovers after each error and keeps going until
+         * <code>MAX_DIAGNOSTICS</code> have been found.
+         */
+        final List<Diagnostic> diagnostics = new ArrayList<>();
+        int i = 0;
+        TokenType token;
+        String error = "";
+        private LayoutListener events;
+        private TreeBuilder builder;
+        /**
+         * Offset just past the ';' of the panel being closed, or -1 if it is
+         * closed at the end of the input.
+         */
+        private int panelEnd;
+        private boolean recover;
+        private int lastError = -1;
+        private long skippedTokens;
+        private int nesting;
+        private long lexNanos;
+
+        Parser(Lexer _lexer) {
+            lexer = _lexer;
+            tokens = lexer.tokens;
+        }
+
+        /**
+         * Parses file and verifies syntax of each line.  On success the
+         * layout tree is left in <code>tree</code>, or has been sent to
+         * <code>listener</code> if one is set.  Otherwise every error is
+         * left in <code>diagnostics</code> and the first in
+         * <code>error</code>.  After an error the parser skips to the next
+         * ';', "End" or widget and carries on, so one pass finds every error.
+         * A large file that <code>LayoutPrescan</code> finds structurally
+         * broken is not lexed at all, and gets only that error.
+         */
+        boolean parseFile() {
+            LayoutEvents.Parse event = new LayoutEvents.Parse();
+            event.begin();
+            long start = LayoutMetrics.ENABLED ? System.nanoTime() : 0;
+
+            recover = true;
+            builder = listener == null ? new TreeBuilder() : null;
+            events = listener == null ? builder : listener;
+            Diagnostic malformed = prescan();
+            if (malformed != null) {
+                diagnostics.add(malformed);
+            } else {
+                try {
+                    token = nextToken();
+                    gui();
+                    tree = builder == null ? null : builder.window;
+                } catch (SyntaxError e) {
+                    record(e);
+                } finally {
+                    lexer.closeFile();
+                }
+            }
+
+            if (LayoutMetrics.ENABLED)
+                LayoutMetrics.parsed(lexer.size, tokens.end(), lexNanos, System.nanoTime() - start,
+                        diagnostics.size(), skippedTokens, nesting);
+            event.end();
+            if (event.shouldCommit()) {
+                event.source = lexer.file != null ? lexer.file.getPath() : "(memory)";
+                event.bytes = lexer.size;
+                event.tokens = tokens.end();
+                event.lexTime = lexNanos;
+                event.errors = diagnostics.size();
+                event.skippedTokens = skippedTokens;
+                event.nesting = nesting;
+                event.sharedWidgets = templates.copies();
+                event.prescanRejected = malformed != null;
+                event.commit();
+            }
+
+            if (lexer.error != null) {
+                error = lexer.error;
+                return false;
+            } else if (!diagnostics.isEmpty()) {
+                error = diagnostics.get(0).message();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Runs <code>LayoutPrescan</code> over the input if it is a large
+         * enough file, so a structurally broken file is rejected before it
+         * is lexed.
+         *
+         * @return The structural error, or null to go on and parse the file
+         */
+        private Diagnostic prescan() {
+            if (lexer.file == null || lexer.file.length() < LayoutPrescan.MIN_SIZE)
+                return null;
+
+            return LayoutPrescan.check(lexer.file);
+        }
+
+        /**
+         * Parses a single widget that must make up the whole input.  Used to
+         * reparse one panel of a document after an edit.  Stops at the first
+         * error.
+         *
+         * @return The widget, or null with the reason left in <code>error</code>
+         */
+        LayoutTree.Widget parseWidget() {
+            events = builder = new TreeBuilder();
+            try {
+                token = nextToken();
+                widget();
+                if (token != TokenType.END_OF_FILE)
+                    throw error("Widget", EnumSet.of(TokenType.END_OF_FILE));
+
+                return builder.widget;
+            } catch (SyntaxError e) {
+                error = e.getMessage();
+                return null;
+            } finally {
+                lexer.closeFile();
+            }
+        }
+
+        /**
+         * One line per error: "Error: Incorrect syntax at line L, column C: ..."
+         */
+        String errorMessage() {
+            if (lexer.error != null)
+                return "Error: " + error;
+            if (diagnostics.isEmpty())
+                return "Error: Incorrect syntax: " + error;
+
+            StringBuilder message = new StringBuilder();
+            for (Diagnostic diagnostic : diagnostics) {
+                if (message.length() > 0)
+                    message.append('\n');
+                message.append(String.format("Error: Incorrect syntax at line %d, column %d: %s", diagnostic.line(),
+                        diagnostic.column(), diagnostic.message()));
+            }
+            if (diagnostics.size() == MAX_DIAGNOSTICS)
+                message.append("\nError: Too many errors, parsing stopped.");
+            return message.toString();
+        }
+
+
+        private String getToken() {
+            return tokens.lexeme(i - 1);
+        }
+
+        /**
+         * Reads the next token.  Without backtracking only the current token
+         * has to be kept, so everything before it is released.
+         */
+        private TokenType nextToken() {
+            while (i == lexer.available()) {
+                long start = LayoutMetrics.ENABLED ? System.nanoTime() : 0;
+                boolean advanced = lexer.advance();
+                if (LayoutMetrics.ENABLED)
+                    lexNanos += System.nanoTime() - start;
+                if (!advanced && i == lexer.available())
+                    return TokenType.END_OF_FILE;
+            }
+
+            tokens.release(i);
+            if (debug) {
+                if (i % 5 == 0)
+                    System.out.println("\n");
+
+                System.out.print(tokens.toString(i) + " ");
+            }
+
+            return tokens.type(i++);
+        }
+
+        /**
+         * Consumes the current token, which must be of the given type.
+         *
+         * @param type    Expected type
+         * @param context Production being parsed, for the error message
+         */
+        private void expect(TokenType type, String context) {
+            if (token != type)
+                throw error(context, EnumSet.of(type));
+
+            token = nextToken();
+        }
+
+        /**
+         * Consumes <code>" STRING "</code> and returns the string.
+         */
+        private String string(String context) {
+            expect(TokenType.QUOTATION, context);
+            if (token != TokenType.STRING)
+                throw error(context, EnumSet.of(TokenType.STRING));
+
+            String text = getToken();
+            token = nextToken();
+            expect(TokenType.QUOTATION, context);
+            return text;
+        }
+
+        /**
+         * Consumes a NUMBER token and returns its value.  The lexer also
+         * classifies unknown words outside parentheses as NUMBER, so the
+         * lexeme is checked here.
+         */
+        private int number(String context) {
+            if (token != TokenType.NUMBER)
+                throw error(context, EnumSet.of(TokenType.NUMBER));
+
+            String lexeme = getToken();
+            int value;
+            try {
+                value = Integer.parseInt(lexeme);
+            } catch (NumberFormatException e) {
+                throw new SyntaxError(diagnostic(Diagnostic.Code.INVALID_NUMBER, context, EnumSet.noneOf(TokenType.class)));
+            }
+
+            token = nextToken();
+            return value;
+        }
+
+        /**
+         * Builds the error for a current token that is not in
+         * <code>expected</code>.
+         */
+        private SyntaxError error(String context, EnumSet<TokenType> expected) {
+            return new SyntaxError(diagnostic(Diagnostic.Code.UNEXPECTED_TOKEN, context, expected));
+        }
+
+        /**
+         * Describes an error at the current token.  At the end of the input
+         * the position is just past the last token.
+         */
+        private Diagnostic diagnostic(Diagnostic.Code code, String context, EnumSet<TokenType> expected) {
+            int start = 0;
+            int line = 1;
+            int column = 1;
+            if (i > 0) {
+                start = tokens.position(i - 1);
+                line = tokens.line(i - 1);
+                column = tokens.column(i - 1);
+            }
+
+            String lexeme = null;
+            if (token != TokenType.END_OF_FILE) {
+                lexeme = getToken();
+            } else if (i > 0) {
+                start += getToken().length();
+                column += getToken().length();
+            }
+            int end = lexeme == null ? start : start + lexeme.length();
+            return new Diagnostic(code, line, column, start, end, context, expected, token, lexeme);
+        }
+
+        /**
+         * Adds an error to <code>diagnostics</code>, unless no token has been
+         * consumed since the previous error: the parser is then still
+         * stuck on the same token, and the error is only an echo of the last.
+         * An error that is rethrown is ignored the same way.
+         */
+        private void record(SyntaxError e) {
+            if (i == lastError)
+                return;
+
+            lastError = i;
+            diagnostics.add(e.diagnostic);
+        }
+
+        /**
+         * Records an error caught at a recovery point.  Rethrows it if the
+         * parser does not recover, or has found too many errors.
+         */
+        private void report(SyntaxError e) {
+            record(e);
+            if (!recover || diagnostics.size() == MAX_DIAGNOSTICS)
+                throw e;
+        }
+
+        /**
+         * Skips to the next token that a list of widgets, or of radio buttons
+         * if <code>radios</code> is set, can continue from: a ';', which is
+         * consumed, "End", the start of a widget or the end of the input.
+         *
+         * @param progress Index of the current token when the failed production
+         *                 began, or -1; if nothing has been consumed since, the
+         *                 current token is skipped so a loop cannot fail on it
+         *                 again
+         */
+        private void synchronize(int progress, boolean radios) {
+            if (i == progress) {
+                token = nextToken();
+                skippedTokens++;
+            }
+
+            while (token != TokenType.END_OF_FILE && token != TokenType.END && !FIRST_WIDGET.contains(token)
+                    && !(radios && token == TokenType.RADIO)) {
+                TokenType skipped = token;
+                token = nextToken();
+                skippedTokens++;
+                if (skipped == TokenType.SEMICOLON)
+                    return;
+            }
+        }
+
+
+        private void gui() {
+            String title = "";
+            int width = 0;
+            int height = 0;
+            LayoutTree.Layout layout = LayoutTree.Layout.FLOW;
+            try {
+                expect(TokenType.WINDOW, "GUI");
+                title = string("GUI");
+                expect(TokenType.OPEN_PARENTHESIS, "GUI");
+                width = number("GUI");
+                expect(TokenType.COMMA, "GUI");
+                height = number("GUI");
+                expect(TokenType.CLOSE_PARENTHESIS, "GUI");
+                layout = layout("GUI");
+            } catch (SyntaxError e) {
+                report(e);
+                synchronize(-1, false);
+            }
+
+            events.onWindowStart(title, width, height);
+            events.onLayout(layout);
+            widgets("GUI");
+            expect(TokenType.END, "GUI");
+            while (token != TokenType.PERIOD) {
+                // A stray "End", e.g. of a panel whose header was lost
+                if (token == TokenType.END_OF_FILE)
+                    throw error("GUI", EnumSet.of(TokenType.PERIOD));
+
+                report(error("GUI", EnumSet.of(TokenType.PERIOD)));
+                synchronize(-1, false);
+                widgets("GUI");
+                expect(TokenType.END, "GUI");
+            }
+
+            events.onWindowEnd();
+        }
+
+
+        private LayoutTree.Layout layout(String context) {
+            expect(TokenType.LAYOUT, context);
+            LayoutTree.Layout layout = layout_type(context);
+            expect(TokenType.COLON, context);
+            return layout;
+        }
+
+        private LayoutTree.Layout layout_type(String context) {
+            if (token == TokenType.FLOW) {
+                token = nextToken();
+                return LayoutTree.Layout.FLOW;
+            } else if (token != TokenType.GRID) {
+                throw error(context, FIRST_LAYOUT_TYPE);
+            }
+
+            token = nextToken();
+            expect(TokenType.OPEN_PARENTHESIS, "Grid");
+            int rows = number("Grid");
+            expect(TokenType.COMMA, "Grid");
+            int columns = number("Grid");
+            if (!GRID_CONTINUATION.contains(token))
+                throw error("Grid", GRID_CONTINUATION);
+
+            int h_gap = 0;
+            int v_gap = 0;
+            if (token == TokenType.COMMA) {
+                token = nextToken();
+                h_gap = number("Grid");
+                expect(TokenType.COMMA, "Grid");
+                v_gap = number("Grid");
+            }
+            expect(TokenType.CLOSE_PARENTHESIS, "Grid");
+            return LayoutTree.Layout.grid(rows, columns, h_gap, v_gap);
+        }
+
+
+        private List<LayoutTree.Radio> radButtons() {
+            if (!FIRST_RADIO_BUTTON.contains(token))
+                report(error("Widget: Group", FIRST_RADIO_BUTTON));
+
+            List<LayoutTree.Radio> radios = new ArrayList<>();
+            while (FIRST_RADIO_BUTTON.contains(token)) {
+                int progress = i;
+                try {
+                    token = nextToken();
+                    String text = string("Radio_Button");
+                    expect(TokenType.SEMICOLON, "Radio_Button");
+                    radios.add(new LayoutTree.Radio(text));
+                } catch (SyntaxError e) {
+                    report(e);
+                    synchronize(progress, true);
+                }
+            }
+
+            if (!FOLLOW_LIST.contains(token))
+                throw error("Widget: Group", union(FIRST_RADIO_BUTTON, FOLLOW_LIST));
+
+            return radios;
+        }
+
+        private void widget() {
+            switch (token) {
+                case BUTTON -> {
+                    token = nextToken();
+                    String text = string("Widget: Button");
+                    expect(TokenType.SEMICOLON, "Widget: Button");
+                    events.onWidget(new LayoutTree.Button(text));
+                }
+                case GROUP -> {
+                    token = nextToken();
+                    List<LayoutTree.Radio> radios = radButtons();
+                    expect(TokenType.END, "Widget: Group");
+                    expect(TokenType.SEMICOLON, "Widget: Group");
+                    events.onWidget(new LayoutTree.Group(radios));
+                }
+                case LABEL -> {
+                    token = nextToken();
+                    String text = string("Widget: Label");
+                    expect(TokenType.SEMICOLON, "Widget: Label");
+                    events.onWidget(new LayoutTree.Label(text));
+                }
+                case PANEL -> panel();
+                case TEXT_FIELD -> {
+                    token = nextToken();
+                    int width = number("Widget: Textfield");
+                    expect(TokenType.SEMICOLON, "Widget: Textfield");
+                    events.onWidget(new LayoutTree.Textfield(width));
+                }
+                default -> throw error("Widget", FIRST_WIDGET);
+            }
+        }
+
+        /**
+         * Parses a panel and every panel nested inside it.  Nested panels
+         * are counted instead of kept on the call stack, so the nesting
+         * depth is limited only by <code>maxDepth</code>.  Errors in a
+         * panel's header or widgets are recovered from here, so one bad
+         * widget does not throw away its enclosing panels; a panel whose
+         * header is bad gets a flow layout, and panels still open at the end
+         * of the input are closed.
+         */
+        private void panel() {
+            int depth = 0;
+
+            while (true) {
+                int progress = i;
+                try {
+                    if (token == TokenType.PANEL) {
+                        if (depth == maxDepth) {
+                            SyntaxError e = new SyntaxError(diagnostic(Diagnostic.Code.NESTING_TOO_DEEP,
+                                    "Widget: Panel", EnumSet.noneOf(TokenType.class)));
+                            record(e);
+                            throw e;
+                        }
+                        if (debug)
+                            System.out.printf("\nPanel Starting(%d)\n", i - 1);
+
+                        events.onPanelStart();
+                        token = nextToken();
+                        LayoutTree.Layout layout = LayoutTree.Layout.FLOW;
+                        try {
+                            layout = layout("Widget: Panel");
+                        } catch (SyntaxError e) {
+                            report(e);
+                            synchronize(-1, false);
+                        }
+                        events.onLayout(layout);
+                        depth++;
+                        nesting = Math.max(nesting, depth);
+                        if (!FIRST_WIDGET.contains(token))
+                            throw error("Widget: Panel", FIRST_WIDGET);
+                    } else if (FIRST_WIDGET.contains(token)) {
+                        widget();
+                    } else if (token == TokenType.END_OF_FILE && recover) {
+                        report(error("Widget: Panel", union(FIRST_WIDGET, FOLLOW_LIST)));
+                        panelEnd = -1;
+                        for (; depth > 0; depth--)
+                            events.onPanelEnd();
+                        return;
+                    } else {
+                        if (!FOLLOW_LIST.contains(token))
+                            throw error("Widget: Panel", union(FIRST_WIDGET, FOLLOW_LIST));
+
+                        expect(TokenType.END, "Widget: Panel");
+                        panelEnd = tokens.position(i - 1) + 1;
+                        if (token == TokenType.SEMICOLON || !recover)
+                            expect(TokenType.SEMICOLON, "Widget: Panel");
+                        else
+                            report(error("Widget: Panel", EnumSet.of(TokenType.SEMICOLON)));
+                        if (debug)
+                            System.out.printf("\nPanel Complete(%d)\n", i - 1);
+
+                        events.onPanelEnd();
+                        if (--depth == 0)
+                            return;
+                    }
+                } catch (SyntaxError e) {
+                    if (e.diagnostic.code() == Diagnostic.Code.NESTING_TOO_DEEP)
+                        throw e;
+
+                    report(e);
+                    synchronize(progress, false);
+                }
+            }
+        }
+
+        /**
+         * Parses one or more widgets, stopping at the first token outside
+         * FIRST(widget), which must then be in FOLLOW(widgets).  After an
+         * error the parser skips ahead and carries on with the next widget.
+         */
+        private void widgets(String context) {
+            if (!FIRST_WIDGET.contains(token)) {
+                if (token == TokenType.END_OF_FILE)
+                    throw error(context, FIRST_WIDGET);
+
+                report(error(context, FIRST_WIDGET));
+                synchronize(-1, false);
+            }
+
+            while (!FOLLOW_LIST.contains(token)) {
+                if (token == TokenType.END_OF_FILE)
+                    throw error(context, union(FIRST_WIDGET, FOLLOW_LIST));
+
+                int progress = i;
+                try {
+                    if (!FIRST_WIDGET.contains(token))
+                        throw error(context, union(FIRST_WIDGET, FOLLOW_LIST));
+
+                    widget();
+                } catch (SyntaxError e) {
+                    if (e.diagnostic.code() == Diagnostic.Code.NESTING_TOO_DEEP)
+                        throw e;
+
+                    report(e);
+                    synchronize(progress, false);
+                }
+            }
+        }
+
+        /**
+         * Returns the template equal to a newly built widget.  While panel
+         * spans are recorded every panel must stay a distinct instance, so
+         * nothing is shared then.
+         */
+        private <T extends LayoutTree.Widget> T shared(T widget) {
+            return panelSpans == null ? templates.intern(widget) : widget;
+        }
+
+        private static EnumSet<TokenType> union(EnumSet<TokenType> first, EnumSet<TokenType> second) {
+            EnumSet<TokenType> union = EnumSet.copyOf(first);
+            union.addAll(second);
+            return union;
+        }
+
+        /**
+         * Listener that builds the layout tree: <code>window</code> from
+         * <code>parseFile()</code>, or <code>widget</code> from
+         * <code>parseWidget()</code>.  Every widget is shared through
+         * <code>templates</code>, and panel spans are recorded when asked.
+         */
+        private final class TreeBuilder implements LayoutListener {
+            private final ArrayDeque<Container> open = new ArrayDeque<>();
+            private String title;
+            private int width;
+            private int height;
+            LayoutTree.Window window;
+            LayoutTree.Widget widget;
+
+            @Override
+            public void onWindowStart(String _title, int _width, int _height) {
+                title = _title;
+                width = _width;
+                height = _height;
+                open.push(new Container(0));
+            }
+
+            @Override
+            public void onLayout(LayoutTree.Layout layout) {
+                open.peek().layout = layout;
+            }
+
+            @Override
+            public void onWidget(LayoutTree.Widget widget) {
+                add(shared(widget));
+            }
+
+            /**
+             * Sent while the current token is still "Panel", whose offset
+             * starts the span.
+             */
+            @Override
+            public void onPanelStart() {
+                open.push(new Container(tokens.position(i - 1)));
+            }
+
+            @Override
+            public void onPanelEnd() {
+                Container container = open.pop();
+                LayoutTree.Panel panel = shared(new LayoutTree.Panel(container.layout, container.widgets));
+                if (panelSpans != null && panelEnd >= 0)
+                    panelSpans.put(panel, new int[]{container.start, panelEnd});
+                add(panel);
+            }
+
+            @Override
+            public void onWindowEnd() {
+                Container root = open.pop();
+                window = new LayoutTree.Window(title, width, height, root.layout, root.widgets);
+            }
+
+            private void add(LayoutTree.Widget widget) {
+                if (open.isEmpty())
+                    this.widget = widget;
+                else
+                    open.peek().widgets.add(widget);
+            }
+        }
+    }
+
+
+    /**
+     * Thrown by the parser at a token that does not fit the grammar.  It
+     * carries no stack trace, since only the diagnostic is reported.
+     */
+    @SuppressWarnings("serial")
+    private static class SyntaxError extends RuntimeException {
+        final Diagnostic diagnostic;
+
+        SyntaxError(Diagnostic _diagnostic) {
+            super(null, null, false, false);
+            diagnostic = _diagnostic;
+        }
+
+        @Override
+        public String getMessage() {
+            return diagnostic.message();
+        }
+    }
+}
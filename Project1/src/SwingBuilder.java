@@ -0,0 +1,359 @@
+/*
+  Project:  Project 1
+  Description:  Builds the Swing component hierarchy for a parsed layout tree.
+ */
+
+import javax.swing.*;
+import javax.swing.border.Border;
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+final class SwingBuilder {
+    /**
+     * Panels with more cells than this get a <code>LazyPanel</code>, for
+     * grid and flow layouts alike.  Off unless set with
+     * <code>-Dlayout.lazyCells</code>.
+     */
+    static final int LAZY_CELLS = Integer.getInteger("layout.lazyCells", 0);
+    /**
+     * Time spent adding components per event of <code>buildInBatches()</code>,
+     * half of a 60 Hz frame.
+     */
+    private static final long BATCH_NANOS = 8_000_000L;
+    /**
+     * Border of every panel.  Borders are immutable, so one instance is
+     * shared by all components, as are the compound borders in
+     * <code>FRAMES</code>.
+     */
+    private static final Border LINE = BorderFactory.createLineBorder(Color.black);
+    /**
+     * Border standing in for a removed flow panel: its line and the 5 pixel
+     * gaps <code>FlowLayout</code> leaves around a single component.
+     */
+    private static final Border FLOW_FRAME = BorderFactory.createCompoundBorder(LINE,
+            BorderFactory.createEmptyBorder(5, 5, 5, 5));
+    private static final Map<String, Border> FRAMES = new ConcurrentHashMap<>();
+
+    /**
+     * Widgets of one container that <code>buildInBatches()</code> has not
+     * added yet.  A group is added one radio button at a time, so
+     * <code>radio</code> and <code>group</code> hold the group in progress.
+     */
+    private static final class Pending {
+        final Container container;
+        final List<LayoutTree.Widget> widgets;
+        int widget;
+        int radio;
+        ButtonGroup group;
+
+        Pending(Container _container, List<LayoutTree.Widget> _widgets) {
+            container = _container;
+            widgets = _widgets;
+        }
+    }
+
+    private SwingBuilder() {
+    }
+
+    /**
+     * Creates the window described by <code>tree</code>.  The frame is not
+     * made visible; that is left to the caller.
+     *
+     * @param tree Parsed layout tree
+     * @return Frame holding every widget of the tree
+     */
+    static JFrame build(LayoutTree.Window tree) {
+        LayoutEvents.Build event = new LayoutEvents.Build();
+        event.begin();
+        long start = LayoutMetrics.ENABLED ? System.nanoTime() : 0;
+
+        JFrame window = new JFrame(tree.title());
+        if (isLazy(tree.widgets())) {
+            window.setContentPane(LazyPanel.create(tree.layout(), tree.widgets()));
+        } else {
+            window.setLayout(layoutManager(tree.layout()));
+            addWidgets(window, tree.widgets());
+        }
+        window.setMinimumSize(new Dimension(tree.width(), tree.height()));
+
+        if (LayoutMetrics.ENABLED || event.isEnabled())
+            built(event, start, descendants(window.getContentPane()), false);
+        return window;
+    }
+
+    /**
+     * Creates the window described by <code>tree</code> with only as many
+     * components as can be made in a few milliseconds, and adds the rest in
+     * later events on the Event Dispatch Thread, so the window can be shown
+     * and painted at once.  Containers are filled breadth first, so the
+     * outer widgets appear before the inner ones.  Must be called on the
+     * Event Dispatch Thread.
+     *
+     * @param tree Parsed layout tree
+     * @return Frame, not yet visible, that fills itself over the next events
+     */
+    static JFrame buildInBatches(LayoutTree.Window tree) {
+        JFrame window = new JFrame(tree.title());
+        window.setMinimumSize(new Dimension(tree.width(), tree.height()));
+        if (isLazy(tree.widgets())) {
+            window.setContentPane(LazyPanel.create(tree.layout(), tree.widgets()));
+            return window;
+        }
+
+        window.setLayout(layoutManager(tree.layout()));
+        ArrayDeque<Pending> queue = new ArrayDeque<>();
+        queue.add(new Pending(window.getContentPane(), tree.widgets()));
+        addBatch(window, queue);
+        return window;
+    }
+
+    /**
+     * Adds components from the head of <code>queue</code> until the batch
+     * time is used up, then schedules the next batch.
+     */
+    private static void addBatch(Component root, ArrayDeque<Pending> queue) {
+        LayoutEvents.Build event = new LayoutEvents.Build();
+        event.begin();
+        long start = System.nanoTime();
+        long deadline = start + BATCH_NANOS;
+        boolean counting = LayoutMetrics.ENABLED || event.isEnabled();
+        int components = 0;
+        while (!queue.isEmpty() && System.nanoTime() < deadline) {
+            Pending pending = queue.peek();
+            if (pending.widget == pending.widgets.size()) {
+                queue.poll();
+                continue;
+            }
+
+            LayoutTree.Widget widget = pending.widgets.get(pending.widget);
+            if (widget instanceof LayoutTree.Group node) {
+                if (pending.radio == 0)
+                    pending.group = new ButtonGroup();
+                JRadioButton button = new JRadioButton(node.radios().get(pending.radio).text());
+                pending.container.add(button);
+                pending.group.add(button);
+                components++;
+                if (++pending.radio < node.radios().size())
+                    continue;
+                pending.radio = 0;
+            } else if (content(widget) instanceof LayoutTree.Panel node) {
+                boolean lazy = isLazy(node.widgets());
+                JPanel panel = panel(lazy ? LazyPanel.create(node.layout(), node.widgets())
+                        : new JPanel(layoutManager(node.layout())));
+                if (widget instanceof LayoutTree.Framed framed)
+                    panel.setBorder(frameBorder(framed.frames(), panel.getBorder()));
+                pending.container.add(panel);
+                if (lazy) {
+                    if (counting)
+                        components += descendants(panel);
+                } else {
+                    queue.add(new Pending(panel, node.widgets()));
+                }
+                components++;
+            } else {
+                JComponent component = buildWidget(widget);
+                pending.container.add(component);
+                components++;
+                if (counting)
+                    components += descendants(component);
+            }
+            pending.widget++;
+        }
+        if (counting)
+            built(event, start, components, true);
+
+        root.revalidate();
+        root.repaint();
+        if (!queue.isEmpty())
+            SwingUtilities.invokeLater(() -> addBatch(root, queue));
+    }
+
+    /**
+     * Creates the component for a single widget.  Groups have no component
+     * of their own, so they are handled by <code>addWidgets()</code>.
+     *
+     * @param widget Widget node
+     * @return New Swing component
+     */
+    static JComponent buildWidget(LayoutTree.Widget widget) {
+        if (widget instanceof LayoutTree.Button button) {
+            return new JButton(button.text());
+        } else if (widget instanceof LayoutTree.Label label) {
+            return new JLabel(label.text());
+        } else if (widget instanceof LayoutTree.Textfield textField) {
+            return new JTextField(textField.width());
+        } else if (widget instanceof LayoutTree.Panel node) {
+            if (isLazy(node.widgets()))
+                return panel(LazyPanel.create(node.layout(), node.widgets()));
+
+            JPanel panel = panel(new JPanel(layoutManager(node.layout())));
+            addWidgets(panel, node.widgets());
+            return panel;
+        } else if (widget instanceof LayoutTree.Framed framed) {
+            JComponent component = buildWidget(framed.widget());
+            component.setBorder(frameBorder(framed.frames(), component.getBorder()));
+            return component;
+        }
+
+        throw new IllegalArgumentException("No component for " + widget);
+    }
+
+    /**
+     * Swaps the component of one panel in a frame made by <code>build()</code>
+     * and leaves every other component in place.  A lazy panel on the path is
+     * rebuilt as a whole, since its cells are not indexed like a container's
+     * components.  A frame from <code>buildInBatches()</code> must be
+     * complete first.
+     *
+     * @param window Frame built from the tree before the panel changed, or
+     *               any container whose content pane was built the same way
+     * @param tree   Layout tree holding the new panel
+     * @param path   Widget indices from the window down to the panel
+     */
+    static void replacePanel(RootPaneContainer window, LayoutTree.Window tree, int[] path) {
+        if (window.getContentPane() instanceof LazyPanel) {
+            window.setContentPane(LazyPanel.create(tree.layout(), tree.widgets()));
+            window.getRootPane().revalidate();
+            window.getRootPane().repaint();
+            return;
+        }
+
+        Container container = window.getContentPane();
+        List<LayoutTree.Widget> widgets = tree.widgets();
+        for (int x = 0; ; x++) {
+            int index = componentIndex(widgets, path[x]);
+            Component component = container.getComponent(index);
+            LayoutTree.Widget node = widgets.get(path[x]);
+            if (x == path.length - 1 || component instanceof LazyPanel) {
+                container.remove(index);
+                container.add(buildWidget(node), index);
+                container.revalidate();
+                container.repaint();
+                return;
+            }
+
+            container = (Container) component;
+            widgets = ((LayoutTree.Panel) node).widgets();
+        }
+    }
+
+    /**
+     * Ends a build event and adds to the metrics, when either is on.
+     *
+     * @param start Value of <code>System.nanoTime()</code> when the build
+     *              began
+     * @param batch true for part of a window
+     */
+    static void built(LayoutEvents.Build event, long start, int components, boolean batch) {
+        if (LayoutMetrics.ENABLED)
+            LayoutMetrics.built(components, System.nanoTime() - start);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.components = components;
+            event.batch = batch;
+            event.commit();
+        }
+    }
+
+    /**
+     * Number of components inside <code>container</code>, at any depth.
+     */
+    private static int descendants(Container container) {
+        int count = 0;
+        for (Component component : container.getComponents()) {
+            count++;
+            if (component instanceof Container child)
+                count += descendants(child);
+        }
+        return count;
+    }
+
+    /**
+     * Position of a widget's component in its container.  A group adds one
+     * component per radio button.
+     */
+    private static int componentIndex(List<LayoutTree.Widget> widgets, int widget) {
+        int index = 0;
+        for (int x = 0; x < widget; x++)
+            index += widgets.get(x) instanceof LayoutTree.Group group ? group.radios().size() : 1;
+        return index;
+    }
+
+    /**
+     * Gives the component of a panel node its border and initial size.
+     */
+    private static JPanel panel(JPanel panel) {
+        panel.setSize(500, 500);
+        panel.setBorder(LINE);
+        return panel;
+    }
+
+    /**
+     * Returns the shared border that draws the removed panels of a
+     * <code>Framed</code> node around the border of its component, which is
+     * either <code>LINE</code> or none.
+     */
+    private static Border frameBorder(List<LayoutTree.Layout> frames, Border inner) {
+        StringBuilder key = new StringBuilder(inner == null ? "-" : "L");
+        for (LayoutTree.Layout frame : frames)
+            key.append(frame.type() == Main.TokenType.FLOW ? 'F' : 'G');
+
+        return FRAMES.computeIfAbsent(key.toString(), unused -> {
+            Border border = inner;
+            for (int x = frames.size() - 1; x >= 0; x--) {
+                Border frame = frames.get(x).type() == Main.TokenType.FLOW ? FLOW_FRAME : LINE;
+                border = border == null ? frame : BorderFactory.createCompoundBorder(frame, border);
+            }
+            return border;
+        });
+    }
+
+    /**
+     * The widget inside any frames.
+     */
+    private static LayoutTree.Widget content(LayoutTree.Widget widget) {
+        return widget instanceof LayoutTree.Framed framed ? framed.widget() : widget;
+    }
+
+    /**
+     * True if a panel with these widgets gets a <code>LazyPanel</code>.
+     * Cells are only counted until there are more than
+     * <code>LAZY_CELLS</code>, so the answer costs little for any panel.
+     */
+    static boolean isLazy(List<LayoutTree.Widget> widgets) {
+        if (LAZY_CELLS <= 0)
+            return false;
+
+        int cells = 0;
+        for (int x = 0; x < widgets.size() && cells <= LAZY_CELLS; x++)
+            cells += widgets.get(x) instanceof LayoutTree.Group group ? group.radios().size() : 1;
+        return cells > LAZY_CELLS;
+    }
+
+    private static void addWidgets(Container container, List<LayoutTree.Widget> widgets) {
+        for (LayoutTree.Widget widget : widgets) {
+            if (widget instanceof LayoutTree.Group node) {
+                ButtonGroup group = new ButtonGroup();
+                for (LayoutTree.Radio radio : node.radios()) {
+                    JRadioButton button = new JRadioButton(radio.text());
+                    container.add(button);
+                    group.add(button);
+                }
+            } else {
+                container.add(buildWidget(widget));
+            }
+        }
+    }
+
+    private static LayoutManager layoutManager(LayoutTree.Layout layout) {
+        if (layout.type() == Main.TokenType.GRID)
+            return new GridLayout(layout.rows(), layout.columns(), layout.hGap(), layout.vGap());
+
+        return new FlowLayout();
+    }
+}